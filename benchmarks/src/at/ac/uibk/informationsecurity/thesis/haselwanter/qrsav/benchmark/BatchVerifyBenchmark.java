@@ -0,0 +1,121 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.benchmark;
+
+import java.security.KeyPair;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.SignatureEntity;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.handler.SignatureHandler;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.KeyPairFactory;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpec;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpecHolder;
+
+/**
+ * Compares verifying a batch of signatures under the same public key by
+ * calling {@link SignatureHandler#verify(SignatureEntity, byte[], java.security.PublicKey)}
+ * in a loop with
+ * {@link SignatureHandler#verifyBatch(List, List, java.security.PublicKey)}.
+ * The messages have the size of a typical QR code payload, every tenth
+ * signature is invalid.
+ *
+ * @author Stefan Haselwanter
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class BatchVerifyBenchmark {
+	private static final Map<String, String> algorithms = new HashMap<>();
+
+	static {
+		algorithms.put("DSA", "SHA256withDSA");
+		algorithms.put("EC", "SHA256withECDSA");
+		algorithms.put("RSA", "SHA256withRSA");
+	}
+
+	@Param({ "EC", "DSA", "RSA" })
+	private String algorithm;
+
+	@Param({ "1024", "2048", "3072" })
+	private int keySize;
+
+	@Param({ "100" })
+	private int batchSize;
+
+	private SignatureHandler sh;
+	private KeyPair keys;
+	private List<byte[]> msgs;
+	private List<SignatureEntity> signs;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		Security.addProvider(new BouncyCastleProvider());
+		SignatureSpecHolder holder = SignatureSpecHolder.of(new SignatureSpec(
+				algorithm, algorithms.get(algorithm), "BC"));
+		Random random = new Random(batchSize);
+
+		keys = new KeyPairFactory(holder).generate(keySize);
+		sh = new SignatureHandler(holder);
+		msgs = new ArrayList<>(batchSize);
+		signs = new ArrayList<>(batchSize);
+
+		for (int i = 0; i < batchSize; i++) {
+			byte[] msg = new byte[200];
+			random.nextBytes(msg);
+			msgs.add(msg);
+			signs.add(sh.sign(msg, keys.getPrivate()));
+
+			if (i % 10 == 9)
+				msg[0] ^= 1;
+		}
+	}
+
+	@Benchmark
+	public int loop() throws Exception {
+		int failed = 0;
+
+		for (int i = 0; i < batchSize; i++)
+			if (!sh.verify(signs.get(i), msgs.get(i), keys.getPublic()))
+				failed++;
+
+		return failed;
+	}
+
+	@Benchmark
+	public int batch() throws Exception {
+		return sh.verifyBatch(signs, msgs, keys.getPublic()).size();
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder().include(
+				BatchVerifyBenchmark.class.getSimpleName()).build();
+
+		new Runner(options).run();
+	}
+}
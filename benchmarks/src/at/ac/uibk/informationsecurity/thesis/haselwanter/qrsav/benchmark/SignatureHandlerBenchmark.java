@@ -0,0 +1,137 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.benchmark;
+
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.Security;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.PayloadFrame;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.SignatureEntity;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.handler.FileHandler;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.handler.SignatureHandler;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.KeyPairFactory;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpec;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpecHolder;
+
+/**
+ * Measures {@link SignatureHandler#sign(byte[], java.security.PrivateKey)} and
+ * {@link SignatureHandler#verify(SignatureEntity, byte[], java.security.PublicKey)}
+ * for every signature algorithm and key size of the {@code TestSuite} across
+ * the test files in {@link FileHandler#fileDir}. Key generation and file I/O
+ * happen in the setup and are not measured. The 'Into' variants sign into a
+ * preallocated array and frame into a reused buffer, so the gc profiler shows
+ * the garbage saved by the hot-path API.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class SignatureHandlerBenchmark {
+	private static final Map<String, String> algorithms = new HashMap<>();
+
+	static {
+		algorithms.put("DSA", "SHA256withDSA");
+		algorithms.put("EC", "SHA256withECDSA");
+		algorithms.put("RSA", "SHA256withRSA");
+	}
+
+	@Param({ "DSA", "EC", "RSA" })
+	private String algorithm;
+
+	@Param({ "1024", "2048", "3072" })
+	private int keySize;
+
+	@Param({ "test010.txt", "test100.txt", "test200.txt", "test300.txt",
+			"test350.txt" })
+	private String file;
+
+	private SignatureHandler sh;
+	private KeyPair keys;
+	private byte[] msg;
+	private SignatureEntity sign;
+	private ByteBuffer msgBuffer;
+	private byte[] signBuffer;
+	private ByteBuffer frameBuffer;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		Security.addProvider(new BouncyCastleProvider());
+		SignatureSpecHolder holder = SignatureSpecHolder.of(new SignatureSpec(
+				algorithm, algorithms.get(algorithm), "BC"));
+
+		keys = new KeyPairFactory(holder).generate(keySize);
+		msg = FileHandler.getInstance("./", holder).readFile(file);
+		sh = new SignatureHandler(holder);
+		sign = sh.sign(msg, keys.getPrivate());
+
+		msgBuffer = ByteBuffer.wrap(msg).asReadOnlyBuffer();
+		signBuffer = new byte[SignatureHandler.getMaxSignatureSize(algorithm,
+				keySize, false)];
+		frameBuffer = ByteBuffer.allocate(PayloadFrame.getFrameSize(
+				msg.length, signBuffer.length, 0));
+	}
+
+	@Benchmark
+	public SignatureEntity sign() throws Exception {
+		return sh.sign(msg, keys.getPrivate());
+	}
+
+	@Benchmark
+	public int signInto() throws Exception {
+		return sh.sign(msgBuffer.duplicate(), keys.getPrivate(), signBuffer, 0);
+	}
+
+	@Benchmark
+	public byte[] frame() throws Exception {
+		return PayloadFrame.encode(msg, sh.sign(msg, keys.getPrivate()), 0);
+	}
+
+	@Benchmark
+	public int frameInto() throws Exception {
+		int length = sh.sign(msgBuffer.duplicate(), keys.getPrivate(),
+				signBuffer, 0);
+		frameBuffer.clear();
+
+		return PayloadFrame.encode(msgBuffer, ByteBuffer.wrap(signBuffer, 0,
+				length), 0, frameBuffer);
+	}
+
+	@Benchmark
+	public boolean verify() throws Exception {
+		return sh.verify(sign, msg, keys.getPublic());
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(SignatureHandlerBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class).build();
+
+		new Runner(options).run();
+	}
+}
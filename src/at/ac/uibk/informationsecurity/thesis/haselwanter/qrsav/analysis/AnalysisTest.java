@@ -1,12 +1,14 @@
 package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis;
 
-import java.awt.Color;
-import java.awt.Graphics2D;
-import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
+import java.security.Key;
 import java.security.KeyPair;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
@@ -20,31 +22,84 @@ import java.security.interfaces.ECPublicKey;
 import java.security.interfaces.RSAPrivateKey;
 import java.security.interfaces.RSAPublicKey;
 import java.security.spec.InvalidKeySpecException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.output.CodeWriter;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.output.PngCodeWriter;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.results.AnalysisResult;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.results.LatencyRecorder;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.results.Phase;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.results.ResultWriter;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.PayloadFrame;
 import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.SignatureEntity;
 import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.exceptions.NoSignatureSpecHolderException;
 import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.handler.FileHandler;
 import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.handler.SignatureHandler;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.store.ArtifactKey;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.store.ArtifactStore;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.DSAParameterStore;
 import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.KeyPairFactory;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.KeyPairPool;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureConverter;
 import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpecHolder;
 
+import org.HdrHistogram.Histogram;
+
 import com.google.zxing.EncodeHintType;
 import com.google.zxing.WriterException;
-import com.google.zxing.common.BitMatrix;
 import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
-import com.google.zxing.qrcode.encoder.ByteMatrix;
 import com.google.zxing.qrcode.encoder.Encoder;
 import com.google.zxing.qrcode.encoder.QRCode;
 
 public class AnalysisTest implements Runnable {
+	/**
+	 * The ways of storing message and signature in the QR code.
+	 */
+	public enum Framing {
+		/**
+		 * The message followed by the signature enclosed in the
+		 * {@link SignatureEntity} tags, encoded as UTF-8 text.
+		 */
+		TAGS,
+		/**
+		 * A binary {@link PayloadFrame} with the signature as is.
+		 */
+		BINARY,
+		/**
+		 * A binary {@link PayloadFrame} with DSA and ECDSA signatures in the
+		 * compact raw encoding.
+		 */
+		BINARY_RAW
+	}
+
+	// Locks for key and signature files shared by concurrently running tests.
+	private static final ConcurrentMap<String, Object> fileLocks = new ConcurrentHashMap<>();
 	private SignatureSpecHolder holder;
 	private FileHandler fh;
 	private String fileName;
 	private int length;
 	private KeyPair keys;
+	private PrintStream out = System.out;
+	private PrintStream err = System.err;
+	private boolean useKeyPairPool = false;
+	private CodeWriter codeWriter = new PngCodeWriter();
+	private Framing framing = Framing.TAGS;
+	private List<ErrorCorrectionLevel> ecLevels = Collections
+			.singletonList(ErrorCorrectionLevel.L);
+	private byte[] payload;
+	private ResultWriter resultWriter;
+	private LatencyRecorder latencyRecorder;
+	private ArtifactStore artifactStore;
+	// Durations of the phases in nanoseconds, ENCODE and WRITE per code.
+	private final long[] timings = new long[Phase.values().length];
+	private final List<long[]> codeTimings = new ArrayList<>();
 
 	public AnalysisTest(SignatureSpecHolder holder, int keySize, String testCase) {
 		this.holder = holder;
@@ -53,102 +108,329 @@ public class AnalysisTest implements Runnable {
 		length = keySize;
 	}
 
+	/**
+	 * Redirects the output of this test, e.g. to buffer the results of tests
+	 * running concurrently.
+	 * 
+	 * @param out
+	 *            the stream for status messages and results.
+	 * @param err
+	 *            the stream for error messages.
+	 */
+	public void setOutput(PrintStream out, PrintStream err) {
+		this.out = out;
+		this.err = err;
+	}
+
+	/**
+	 * Takes missing key pairs from the shared {@link KeyPairPool} instead of
+	 * generating them synchronously.
+	 * 
+	 * @param useKeyPairPool
+	 *            true to use the key pair pool, false otherwise.
+	 */
+	public void setUseKeyPairPool(boolean useKeyPairPool) {
+		this.useKeyPairPool = useKeyPairPool;
+	}
+
+	/**
+	 * Sets the format the QR code is saved in. Defaults to 1-bit PNG images.
+	 * 
+	 * @param codeWriter
+	 *            the code writer.
+	 */
+	public void setCodeWriter(CodeWriter codeWriter) {
+		this.codeWriter = codeWriter;
+	}
+
+	/**
+	 * Sets how message and signature are stored in the QR code. Defaults to
+	 * {@link Framing#TAGS}.
+	 * 
+	 * @param framing
+	 *            the framing.
+	 */
+	public void setFraming(Framing framing) {
+		this.framing = framing;
+	}
+
+	/**
+	 * Sets the error correction levels the QR code is encoded with. The
+	 * message is signed only once and the same payload is encoded at every
+	 * level. Defaults to {@link ErrorCorrectionLevel#L}.
+	 * 
+	 * @param ecLevels
+	 *            the error correction levels.
+	 */
+	public void setErrorCorrectionLevels(ErrorCorrectionLevel... ecLevels) {
+		if (ecLevels.length == 0)
+			throw new IllegalArgumentException(
+					"At least one error correction level is required.");
+
+		this.ecLevels = Arrays.asList(ecLevels.clone());
+	}
+
+	/**
+	 * Writes the results as {@link AnalysisResult} records to the writer
+	 * instead of printing them. The writer has to be thread-safe if it is
+	 * shared between concurrently running tests.
+	 * 
+	 * @param resultWriter
+	 *            the result writer, or null to print the results.
+	 */
+	public void setResultWriter(ResultWriter resultWriter) {
+		this.resultWriter = resultWriter;
+	}
+
+	/**
+	 * Records the durations of the phases of successful runs into the
+	 * histograms of the recorder.
+	 * 
+	 * @param latencyRecorder
+	 *            the latency recorder, or null to record nothing.
+	 */
+	public void setLatencyRecorder(LatencyRecorder latencyRecorder) {
+		this.latencyRecorder = latencyRecorder;
+	}
+
+	/**
+	 * Stores signatures, public keys and QR codes in the artifact store,
+	 * indexed by test file, signature algorithm, key size and error correction
+	 * level, instead of the flat files of the {@link FileHandler} which later
+	 * tests overwrite.
+	 * 
+	 * @param artifactStore
+	 *            the artifact store, or null to write flat files.
+	 */
+	public void setArtifactStore(ArtifactStore artifactStore) {
+		this.artifactStore = artifactStore;
+	}
+
 	@Override
 	public void run() {
 		// Parameters
 		byte[] msg = null;
 		SignatureEntity sign = null;
-		QRCode code = null;
+		List<QRCode> codes = null;
+
+		Arrays.fill(timings, 0);
+		codeTimings.clear();
 
 		try {
+			long start = System.nanoTime();
 			msg = fh.readFile(fileName);
+			timings[Phase.READ.ordinal()] = System.nanoTime() - start;
 			// Get signature and keys.
 			try {
 				sign = generateSignature(msg);
-				System.out.println("Files for keys and signature created.");
+				out.println("Files for keys and signature created.");
 			} catch (InvalidKeyException | NoSuchAlgorithmException
 					| NoSuchProviderException
 					| InvalidAlgorithmParameterException | SignatureException
 					| NoSignatureSpecHolderException e) {
-				System.err.println("Generation process failed due to '"
+				err.println("Generation process failed due to '"
 						+ e.getMessage() + "'");
 			} catch (InvalidKeySpecException e) {
-				System.err.println("Reading key files failed due to '"
+				err.println("Reading key files failed due to '"
+						+ e.getMessage() + "'");
+			} catch (GeneralSecurityException e) {
+				err.println("Generation process failed due to '"
 						+ e.getMessage() + "'");
 			}
 
 			// Generate QR code.
 			try {
-				code = generateCode(msg, sign);
-				System.out.println("QR code created.");
-			} catch (NullPointerException | WriterException e) {
-				System.err.println("Could not create QR code due to '"
+				codes = generateCodes(msg, sign);
+				out.println(codes.size() == 1 ? "QR code created." : codes
+						.size() + " QR codes created.");
+			} catch (NullPointerException | WriterException
+					| SignatureException e) {
+				err.println("Could not create QR code due to '"
 						+ e.getMessage() + "'");
 			}
 		} catch (IOException e) {
-			System.err.println(e.getMessage());
+			err.println(e.getMessage());
+		}
+
+		if (codes == null)
+			return;
+
+		int signSize, dataSize;
+		if (payload != null) {
+			signSize = getSignatureSize();
+			dataSize = payload.length;
+		} else {
+			signSize = sign.toString().getBytes().length;
+			dataSize = msg.length + signSize;
+		}
+
+		if (latencyRecorder != null)
+			recordLatencies();
+
+		if (resultWriter != null)
+			writeResults(codes, getKeySize(keys.getPrivate()),
+					getKeySize(keys.getPublic()), msg, signSize, dataSize);
+		else
+			printResults(codes, getKeySize(keys.getPrivate()),
+					getKeySize(keys.getPublic()), msg, signSize, dataSize);
+	}
+
+	private void recordLatencies() {
+		Histogram[] cell = latencyRecorder.getCell(
+				holder.getSpec().getName(), length, fileName);
+
+		LatencyRecorder.record(cell, Phase.READ, timings[Phase.READ.ordinal()]);
+		LatencyRecorder.record(cell, Phase.KEYS, timings[Phase.KEYS.ordinal()]);
+		LatencyRecorder.record(cell, Phase.SIGN, timings[Phase.SIGN.ordinal()]);
+		LatencyRecorder.record(cell, Phase.VERIFY,
+				timings[Phase.VERIFY.ordinal()]);
+		LatencyRecorder.record(cell, Phase.SAVE, timings[Phase.SAVE.ordinal()]);
+
+		// Signature saved once, the codes of all levels written separately.
+		for (long[] codeTiming : codeTimings) {
+			LatencyRecorder.record(cell, Phase.ENCODE, codeTiming[0]);
+			LatencyRecorder.record(cell, Phase.WRITE, codeTiming[1]);
 		}
+	}
 
-		if (code != null)
-			printResults(code, getKeySize(keys.getPrivate()),
-					getKeySize(keys.getPublic()), msg, sign.toString()
-							.getBytes());
+	private void writeResults(List<QRCode> codes, int privateKeySize,
+			int publicKeySize, byte[] msg, int signSize, int dataSize) {
+		try {
+			for (int i = 0; i < codes.size(); i++) {
+				QRCode code = codes.get(i);
+				long[] phases = timings.clone();
+				phases[Phase.ENCODE.ordinal()] = codeTimings.get(i)[0];
+				phases[Phase.WRITE.ordinal()] = codeTimings.get(i)[1];
+
+				resultWriter.write(new AnalysisResult(holder
+						.getAlgorithmForKeys(), holder.getSpec().getName(),
+						holder.getProvider(), fileName, framing.name(),
+						length, privateKeySize, publicKeySize,
+						msg.length * 8, signSize * 8, dataSize * 8, code
+								.getECLevel().name(), code.getVersion()
+								.getVersionNumber(), code.getVersion()
+								.getDimensionForVersion(), phases));
+			}
+		} catch (IOException e) {
+			err.println("Writing results failed due to '" + e.getMessage()
+					+ "'");
+		}
 	}
 
 	public void printResults(QRCode code, int privateKeySize,
 			int publicKeySize, byte[] msg, byte[] sign) {
-		byte[] data = concatArrays(msg, sign);
+		printResults(Collections.singletonList(code), privateKeySize,
+				publicKeySize, msg, sign.length, msg.length + sign.length);
+	}
 
-		System.out.println("==============================");
-		System.out.println("INPUT Message: "
+	private void printResults(List<QRCode> codes, int privateKeySize,
+			int publicKeySize, byte[] msg, int signSize, int dataSize) {
+		out.println("==============================");
+		out.println("INPUT Message: "
 				+ (new String(msg, StandardCharsets.ISO_8859_1)));
-		System.out.println("INPUT Message size: " + msg.length * 8 + " Bits");
-		System.out.println("INPUT Public key size: " + publicKeySize + " Bits");
-		System.out.println("INPUT Private key size: " + privateKeySize
+		out.println("INPUT Message size: " + msg.length * 8 + " Bits");
+		out.println("INPUT Public key size: " + publicKeySize + " Bits");
+		out.println("INPUT Private key size: " + privateKeySize
 				+ " Bits");
-		System.out
-				.println("INPUT Signature size: " + sign.length * 8 + " Bits");
-		System.out.println("INPUT Data size: " + data.length * 8 + " Bits");
-		System.out.println("QR CODE Error correction level: "
-				+ code.getECLevel());
-		System.out.println("QR CODE Version: " + code.getVersion());
-		System.out.println("QR CODE Code size: "
-				+ code.getVersion().getDimensionForVersion() + "x"
-				+ code.getVersion().getDimensionForVersion());
-		System.out.println("==============================");
+		out.println("INPUT Signature size: " + signSize * 8 + " Bits");
+		out.println("INPUT Data size: " + dataSize * 8 + " Bits");
+		out.println("SIGNATURE Signing time: "
+				+ timings[Phase.SIGN.ordinal()] / 1000 + " us");
+		out.println("SIGNATURE Verification time: "
+				+ timings[Phase.VERIFY.ordinal()] / 1000 + " us");
+		for (QRCode code : codes) {
+			out.println("QR CODE Error correction level: "
+					+ code.getECLevel());
+			out.println("QR CODE Version: " + code.getVersion());
+			out.println("QR CODE Code size: "
+					+ code.getVersion().getDimensionForVersion() + "x"
+					+ code.getVersion().getDimensionForVersion());
+		}
+		out.println("==============================");
 	}
 
 	private SignatureEntity generateSignature(byte[] msg)
 			throws NoSuchAlgorithmException, NoSuchProviderException,
 			NoSignatureSpecHolderException, InvalidKeyException,
 			SignatureException, IOException,
-			InvalidAlgorithmParameterException, InvalidKeySpecException {
-		// Try to get key pair from file.
-		try {
-			keys = fh.getKeyPair("ste-" + length);
-		} catch (IOException e) {
-			// No key pair found.
-			KeyPairFactory factory = new KeyPairFactory(holder);
-			keys = factory.generate(length);
-		}
+			InvalidAlgorithmParameterException, InvalidKeySpecException,
+			GeneralSecurityException {
+		String keyName = "ste-" + length;
+		String algorithm = holder.getSpec().getKeyName().toLowerCase();
+
+		// Tests with the same algorithm and key size share the key files.
+		long start = System.nanoTime();
+		synchronized (lockFor(keyName + "-" + algorithm)) {
+			// Try to get key pair from file.
+			try {
+				keys = fh.getKeyPair(keyName);
+			} catch (IOException e) {
+				// No key pair found.
+				keys = null;
+			}
 
-		// No key pair found.
-		if (keys == null) {
-			KeyPairFactory factory = new KeyPairFactory(holder);
-			keys = factory.generate(length);
+			// DSA keys of earlier runs may be built on parameters with another
+			// subprime, whose signatures exceed the size bound.
+			if (keys != null
+					&& keys.getPublic() instanceof DSAPublicKey
+					&& ((DSAPublicKey) keys.getPublic()).getParams().getQ()
+							.bitLength() != DSAParameterStore
+							.getSubprimeLength(length))
+				keys = null;
+
+			// No key pair found, only new key pairs have to be saved.
+			if (keys == null) {
+				keys = generateKeyPair();
+				fh.saveKeyPair(keys, keyName);
+			}
 		}
 
+		timings[Phase.KEYS.ordinal()] = System.nanoTime() - start;
+
+		start = System.nanoTime();
 		SignatureHandler sh = new SignatureHandler(holder);
 		SignatureEntity sign = sh.sign(msg, keys.getPrivate());
-
-		fh.saveSignature(sign, "ste");
-		fh.saveKeyPair(keys, "ste-" + length);
+		timings[Phase.SIGN.ordinal()] = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		boolean verifies = sh.verify(sign, msg, keys.getPublic());
+		timings[Phase.VERIFY.ordinal()] = System.nanoTime() - start;
+		if (!verifies)
+			throw new SignatureException("Created signature does not verify.");
+
+		start = System.nanoTime();
+		if (artifactStore != null) {
+			artifactStore.put(getArtifactKey("sign", null), sign.get(), "sig");
+			artifactStore.put(getArtifactKey("pub", null), keys.getPublic()
+					.getEncoded(), "pub");
+		} else {
+			synchronized (lockFor("ste-" + algorithm)) {
+				fh.saveSignature(sign, "ste");
+			}
+		}
+		timings[Phase.SAVE.ordinal()] = System.nanoTime() - start;
 
 		return sign;
 	}
 
-	private QRCode generateCode(byte[] msg, SignatureEntity sign)
-			throws IOException, WriterException {
+	private KeyPair generateKeyPair() throws GeneralSecurityException,
+			NoSignatureSpecHolderException {
+		if (!useKeyPairPool) {
+			KeyPairFactory factory = new KeyPairFactory(holder);
+			return factory.generate(length);
+		}
+
+		try {
+			return KeyPairPool.getInstance(holder, length).take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new GeneralSecurityException(
+					"Interrupted while waiting for a key pair.");
+		}
+	}
+
+	private List<QRCode> generateCodes(byte[] msg, SignatureEntity sign)
+			throws IOException, WriterException, SignatureException {
 		int size = 500;
 		if (msg.length >= 1000)
 			size = 800;
@@ -157,42 +439,93 @@ public class AnalysisTest implements Runnable {
 		else if (msg.length >= 3000)
 			size = 1500;
 
-		// Append signature to message string.
-		String data = new String(msg, StandardCharsets.ISO_8859_1).concat(sign
-				.toString());
-
-		// Character encoding using ISO-8859-1.
+		String data;
 		Map<EncodeHintType, String> hints = new HashMap<>();
-		hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
-
-		// Generate QR code.
-		QRCode code = Encoder.encode(data, ErrorCorrectionLevel.L, hints);
-
-		// Generate BitMatrix to save QR code as image.
-		BitMatrix m = renderResult(code, size, size, 4); // 4 is standard quiet
-															// zone size.
-		int imgSize = m.getWidth();
-		BufferedImage img = new BufferedImage(imgSize, imgSize,
-				BufferedImage.TYPE_INT_RGB);
-
-		Graphics2D graphics = img.createGraphics();
-		graphics.setColor(Color.WHITE);
-		graphics.fillRect(0, 0, imgSize, imgSize);
-		graphics.setColor(Color.BLACK);
-
-		for (int i = 0; i < imgSize; i++) {
-			for (int j = 0; j < imgSize; j++) {
-				if (m.get(i, j)) {
-					graphics.fillRect(i, j, 1, 1);
+
+		if (framing == Framing.TAGS) {
+			// Append signature to message string.
+			data = new String(msg, StandardCharsets.ISO_8859_1).concat(sign
+					.toString());
+
+			// Character encoding using UTF-8.
+			hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+		} else {
+			int componentLength = framing == Framing.BINARY_RAW ? SignatureConverter
+					.getComponentLength(keys.getPublic()) : 0;
+			payload = PayloadFrame.encode(msg, sign, componentLength);
+
+			// Character encoding using ISO-8859-1 maps every byte of the frame
+			// to one character stored in byte mode.
+			data = new String(payload, StandardCharsets.ISO_8859_1);
+			hints.put(EncodeHintType.CHARACTER_SET, "ISO-8859-1");
+		}
+
+		// Generate a QR code per level from the same payload. zxing derives
+		// the segment bits from the level's version choice internally, so only
+		// the payload can be shared between the levels.
+		List<QRCode> codes = new ArrayList<>(ecLevels.size());
+		String codeName = fileName.substring(4, 7) + "-" + length + "-"
+				+ holder.getSpec().getKeyName().toLowerCase();
+
+		WriterException failure = null;
+
+		for (ErrorCorrectionLevel ecLevel : ecLevels) {
+			QRCode code;
+			long start = System.nanoTime();
+			try {
+				code = Encoder.encode(data, ecLevel, hints);
+			} catch (WriterException e) {
+				// Higher levels may not fit anymore, keep the others.
+				failure = e;
+				if (ecLevels.size() > 1)
+					err.println("Could not create QR code at error correction level "
+							+ ecLevel + " due to '" + e.getMessage() + "'");
+				continue;
+			}
+
+			long encoded = System.nanoTime();
+
+			// Save QR code in the configured format, 4 is standard quiet zone
+			// size. Levels other than L are stored with the level as suffix.
+			if (artifactStore != null) {
+				try (ArtifactStore.Output output = artifactStore.newOutput(
+						getArtifactKey("code-" + framing.name().toLowerCase(),
+								ecLevel.name()), codeWriter.getExtension())) {
+					codeWriter.write(code.getMatrix(), size, 4, output);
+					output.commit();
+				}
+			} else {
+				try (FileChannel channel = fh.newCodeChannel(
+						ecLevel == ErrorCorrectionLevel.L ? codeName : codeName
+								+ "-" + ecLevel.name().toLowerCase(),
+						codeWriter.getExtension())) {
+					codeWriter.write(code.getMatrix(), size, 4, channel);
 				}
 			}
+
+			codes.add(code);
+			codeTimings.add(new long[] { encoded - start,
+					System.nanoTime() - encoded });
 		}
 
-		// Save QR code as image.
-		fh.saveCode(img, fileName.substring(4, 7) + "-" + length + "-"
-				+ holder.getAlgorithmForKeys().toLowerCase());
+		if (codes.isEmpty())
+			throw failure;
+
+		return codes;
+	}
+
+	private ArtifactKey getArtifactKey(String kind, String ecLevel) {
+		return new ArtifactKey(kind, fileName, holder.getSpec().getName(),
+				length, ecLevel);
+	}
 
-		return code;
+	private int getSignatureSize() {
+		try {
+			return PayloadFrame.parse(ByteBuffer.wrap(payload)).getSignature()
+					.remaining();
+		} catch (SignatureException e) {
+			return -1;
+		}
 	}
 
 	private int getKeySize(PrivateKey key) {
@@ -203,7 +536,7 @@ public class AnalysisTest implements Runnable {
 		else if (key instanceof RSAPrivateKey)
 			return ((RSAPrivateKey) key).getModulus().bitLength();
 
-		return -1;
+		return getEdDSAKeySize(key);
 	}
 
 	private int getKeySize(PublicKey key) {
@@ -214,61 +547,30 @@ public class AnalysisTest implements Runnable {
 		} else if (key instanceof RSAPublicKey)
 			return ((RSAPublicKey) key).getModulus().bitLength();
 
-		return -1;
+		return getEdDSAKeySize(key);
 	}
 
-	// Note that the input matrix uses 0 == white, 1 == black, while the output
-	// matrix uses
-	// 0 == black, 255 == white (i.e. an 8 bit greyscale bitmap).
-	private BitMatrix renderResult(QRCode code, int width, int height,
-			int quietZone) {
-		ByteMatrix input = code.getMatrix();
-		if (input == null) {
-			throw new IllegalStateException();
-		}
-		int inputWidth = input.getWidth();
-		int inputHeight = input.getHeight();
-		int qrWidth = inputWidth + (quietZone * 2);
-		int qrHeight = inputHeight + (quietZone * 2);
-		int outputWidth = Math.max(width, qrWidth);
-		int outputHeight = Math.max(height, qrHeight);
-
-		int multiple = Math.min(outputWidth / qrWidth, outputHeight / qrHeight);
-		// Padding includes both the quiet zone and the extra white pixels to
-		// accommodate the requested
-		// dimensions. For example, if input is 25x25 the QR will be 33x33
-		// including the quiet zone.
-		// If the requested size is 200x160, the multiple will be 4, for a QR of
-		// 132x132. These will
-		// handle all the padding from 100x100 (the actual QR) up to 200x160.
-		int leftPadding = (outputWidth - (inputWidth * multiple)) / 2;
-		int topPadding = (outputHeight - (inputHeight * multiple)) / 2;
-
-		BitMatrix output = new BitMatrix(outputWidth, outputHeight);
-
-		for (int inputY = 0, outputY = topPadding; inputY < inputHeight; inputY++, outputY += multiple) {
-			// Write the contents of this row of the barcode
-			for (int inputX = 0, outputX = leftPadding; inputX < inputWidth; inputX++, outputX += multiple) {
-				if (input.get(inputX, inputY) == 1) {
-					output.setRegion(outputX, outputY, multiple, multiple);
-				}
-			}
+	/**
+	 * Returns the size of the encoded EdDSA keys, which is the same for the
+	 * private and the public key.
+	 */
+	private static int getEdDSAKeySize(Key key) {
+		switch (key.getAlgorithm()) {
+		case "Ed25519":
+			return 256;
+		case "Ed448":
+			return 456;
+
+		default:
+			return -1;
 		}
-
-		return output;
 	}
 
-	private static byte[] concatArrays(byte[] a, byte[] b) {
-		byte[] c = new byte[a.length + b.length];
-
-		int i;
-		for (i = 0; i < a.length; i++)
-			c[i] = a[i];
-
-		for (int j = 0; j < b.length; j++)
-			c[i + j] = b[j];
+	private static Object lockFor(String name) {
+		Object lock = new Object();
+		Object existing = fileLocks.putIfAbsent(name, lock);
 
-		return Arrays.copyOf(c, c.length);
+		return existing == null ? lock : existing;
 	}
 
 }
@@ -0,0 +1,404 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.Security;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.AnalysisTest.Framing;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.PayloadFrame;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.SignatureEntity;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.exceptions.NoSignatureSpecHolderException;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.handler.SignatureHandler;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.KeyPairFactory;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureConverter;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpec;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpecHolder;
+
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.decoder.Version;
+import com.google.zxing.qrcode.encoder.Encoder;
+
+/**
+ * This class predicts the QR code version needed for a message signed with a
+ * specific algorithm and key size without encoding anything. It computes the
+ * worst-case payload size from the maximum signature size of the
+ * {@link SignatureHandler} and compares the bits needed in byte mode with the
+ * data capacity of each version, taken once from zxing's version tables.
+ * Messages are assumed to consist of ASCII characters, so only the signature
+ * grows when encoded as UTF-8 in the {@link Framing#TAGS} format.
+ *
+ * @author Stefan Haselwanter
+ *
+ */
+public class CapacityPlanner {
+	// Signature algorithms of the TestSuite per key algorithm.
+	private static final Map<String, String> signatureAlgorithms = new HashMap<>();
+	// Number of data bytes per error correction level (ordinal) and version.
+	private static final int[][] capacity = new int[ErrorCorrectionLevel
+			.values().length][41];
+
+	static {
+		signatureAlgorithms.put("DSA", "SHA256withDSA");
+		signatureAlgorithms.put("EC", "SHA256withECDSA");
+		signatureAlgorithms.put("RSA", "SHA256withRSA");
+
+		for (ErrorCorrectionLevel ecLevel : ErrorCorrectionLevel.values()) {
+			for (int v = 1; v <= 40; v++) {
+				Version version = Version.getVersionForNumber(v);
+				capacity[ecLevel.ordinal()][v] = version.getTotalCodewords()
+						- version.getECBlocksForLevel(ecLevel)
+								.getTotalECCodewords();
+			}
+		}
+	}
+
+	private CapacityPlanner() {
+
+	}
+
+	/**
+	 * Returns the worst-case number of bytes stored in the QR code for a
+	 * message and its signature.
+	 *
+	 * @param messageLength
+	 *            the message length in bytes.
+	 * @param algorithmForKeys
+	 *            the key algorithm, i.e. 'DSA', 'EC' or 'RSA'.
+	 * @param keySize
+	 *            the key size.
+	 * @param framing
+	 *            the framing of message and signature.
+	 * @return the payload size in bytes.
+	 */
+	public static int getPayloadSize(int messageLength,
+			String algorithmForKeys, int keySize, Framing framing) {
+		switch (framing) {
+		case TAGS:
+			// Every signature byte of at least 0x80 takes two bytes in UTF-8.
+			return messageLength
+					+ SignatureEntity.SIG_START_TAG.length()
+					+ 2
+					* SignatureHandler.getMaxSignatureSize(algorithmForKeys,
+							keySize, false)
+					+ SignatureEntity.SIG_END_TAG.length();
+		case BINARY:
+		case BINARY_RAW:
+			boolean raw = framing == Framing.BINARY_RAW
+					&& !algorithmForKeys.equals("RSA");
+			int lengthSize = 1;
+			for (int length = messageLength; (length >>>= 7) != 0;)
+				lengthSize++;
+
+			return 1
+					+ lengthSize
+					+ messageLength
+					+ SignatureHandler.getMaxSignatureSize(algorithmForKeys,
+							keySize, raw);
+
+		default:
+			throw new IllegalArgumentException("Unknown framing '" + framing
+					+ "'.");
+		}
+	}
+
+	/**
+	 * Returns the smallest version able to store the payload in byte mode.
+	 *
+	 * @param payloadSize
+	 *            the payload size in bytes.
+	 * @param ecLevel
+	 *            the error correction level.
+	 * @param eci
+	 *            true if the payload is preceded by an ECI segment, which
+	 *            zxing adds for character sets other than ISO-8859-1.
+	 * @return the version number from 1 to 40, or -1 if the payload is too
+	 *         large for any version.
+	 */
+	public static int getMinimumVersion(int payloadSize,
+			ErrorCorrectionLevel ecLevel, boolean eci) {
+		int[] dataBytes = capacity[ecLevel.ordinal()];
+		// Mode indicator and optional ECI designator.
+		int header = 4 + (eci ? 4 + 8 : 0);
+
+		for (int v = 1; v <= 40; v++) {
+			// Character count indicator of byte mode.
+			int countBits = v <= 9 ? 8 : 16;
+			int bits = header + countBits + 8 * payloadSize;
+
+			if ((bits + 7) / 8 <= dataBytes[v])
+				return v;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Plans the QR code for a message signed with a specific algorithm and
+	 * key size.
+	 *
+	 * @param messageLength
+	 *            the message length in bytes.
+	 * @param algorithmForKeys
+	 *            the key algorithm, i.e. 'DSA', 'EC' or 'RSA'.
+	 * @param keySize
+	 *            the key size.
+	 * @param ecLevel
+	 *            the error correction level.
+	 * @param framing
+	 *            the framing of message and signature.
+	 * @return the plan, or null if the payload does not fit into any version.
+	 */
+	public static Plan plan(int messageLength, String algorithmForKeys,
+			int keySize, ErrorCorrectionLevel ecLevel, Framing framing) {
+		int payloadSize = getPayloadSize(messageLength, algorithmForKeys,
+				keySize, framing);
+		int version = getMinimumVersion(payloadSize, ecLevel,
+				framing == Framing.TAGS);
+
+		return version < 0 ? null : new Plan(payloadSize, version, ecLevel);
+	}
+
+	/**
+	 * Compares planned versions with the versions zxing chooses for random
+	 * configurations. Every even sample encodes a random worst-case payload,
+	 * which has to get exactly the planned version. Every odd sample encodes
+	 * the message with a real signature framed like the {@link AnalysisTest}
+	 * does, whose payload must not exceed the planned one and has to get the
+	 * minimum version for its actual size.
+	 *
+	 * @param samples
+	 *            the number of configurations to check.
+	 * @param random
+	 *            the source of randomness.
+	 * @return the number of configurations where the versions differ.
+	 * @throws WriterException
+	 * @throws GeneralSecurityException
+	 *             thrown if a key pair or signature cannot be created.
+	 * @throws NoSignatureSpecHolderException
+	 */
+	public static int crossCheck(int samples, Random random)
+			throws WriterException, GeneralSecurityException,
+			NoSignatureSpecHolderException {
+		String[] algorithms = { "DSA", "EC", "RSA" };
+		int[] keySizes = { 1024, 2048, 3072 };
+		// Key pairs per algorithm and key size, generated on first use.
+		Map<String, KeyPair> keyPairs = new HashMap<>();
+		int mismatches = 0;
+
+		for (int i = 0; i < samples; i++) {
+			String algorithm = algorithms[random.nextInt(algorithms.length)];
+			int keySize = keySizes[random.nextInt(keySizes.length)];
+			ErrorCorrectionLevel ecLevel = ErrorCorrectionLevel.values()[random
+					.nextInt(4)];
+			Framing framing = Framing.values()[random.nextInt(Framing
+					.values().length)];
+			int messageLength = random.nextInt(3000);
+			Plan plan = plan(messageLength, algorithm, keySize, ecLevel,
+					framing);
+
+			if (plan == null)
+				continue;
+
+			if (i % 2 == 0) {
+				int version = encode(plan.getPayloadSize(), messageLength,
+						ecLevel, framing, random);
+				if (version != plan.getVersion())
+					mismatches++;
+			} else if (!encodeSigned(plan, messageLength, algorithm, keySize,
+					framing, keyPairs, random))
+				mismatches++;
+		}
+
+		return mismatches;
+	}
+
+	/**
+	 * Encodes a random payload of the worst-case size with zxing and returns
+	 * the chosen version.
+	 */
+	private static int encode(int payloadSize, int messageLength,
+			ErrorCorrectionLevel ecLevel, Framing framing, Random random)
+			throws WriterException {
+		Map<EncodeHintType, String> hints = new HashMap<>();
+		String data;
+
+		if (framing == Framing.TAGS) {
+			// ASCII message followed by a signature of two-byte characters.
+			char[] msg = new char[messageLength];
+			for (int i = 0; i < msg.length; i++)
+				msg[i] = (char) ('a' + random.nextInt(26));
+			int signSize = (payloadSize - messageLength
+					- SignatureEntity.SIG_START_TAG.length() - SignatureEntity.SIG_END_TAG
+						.length()) / 2;
+			char[] sign = new char[signSize];
+			Arrays.fill(sign, '\u00e4');
+
+			data = new String(msg) + SignatureEntity.SIG_START_TAG
+					+ new String(sign) + SignatureEntity.SIG_END_TAG;
+			hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+		} else {
+			byte[] payload = new byte[payloadSize];
+			random.nextBytes(payload);
+			// Header of a payload frame.
+			payload[0] = 0x10;
+
+			data = new String(payload, StandardCharsets.ISO_8859_1);
+			hints.put(EncodeHintType.CHARACTER_SET, "ISO-8859-1");
+		}
+
+		return Encoder.encode(data, ecLevel, hints).getVersion()
+				.getVersionNumber();
+	}
+
+	/**
+	 * Signs a random ASCII message, encodes it like the {@link AnalysisTest}
+	 * with zxing and checks the payload size and version against the plan.
+	 */
+	private static boolean encodeSigned(Plan plan, int messageLength,
+			String algorithm, int keySize, Framing framing,
+			Map<String, KeyPair> keyPairs, Random random)
+			throws WriterException, GeneralSecurityException,
+			NoSignatureSpecHolderException {
+		SignatureSpecHolder holder = SignatureSpecHolder.of(new SignatureSpec(
+				algorithm, signatureAlgorithms.get(algorithm), "BC"));
+		String keyName = algorithm + "-" + keySize;
+		KeyPair keys = keyPairs.get(keyName);
+
+		if (keys == null) {
+			keys = new KeyPairFactory(holder).generate(keySize);
+			keyPairs.put(keyName, keys);
+		}
+
+		byte[] msg = new byte[messageLength];
+		for (int i = 0; i < msg.length; i++)
+			msg[i] = (byte) ('a' + random.nextInt(26));
+		SignatureEntity sign = new SignatureHandler(holder).sign(msg,
+				keys.getPrivate());
+
+		Map<EncodeHintType, String> hints = new HashMap<>();
+		String data;
+		int payloadSize;
+
+		if (framing == Framing.TAGS) {
+			data = new String(msg, StandardCharsets.ISO_8859_1).concat(sign
+					.toString());
+			payloadSize = data.getBytes(StandardCharsets.UTF_8).length;
+			hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+		} else {
+			int componentLength = framing == Framing.BINARY_RAW ? SignatureConverter
+					.getComponentLength(keys.getPublic()) : 0;
+			byte[] payload = PayloadFrame.encode(msg, sign, componentLength);
+
+			data = new String(payload, StandardCharsets.ISO_8859_1);
+			payloadSize = payload.length;
+			hints.put(EncodeHintType.CHARACTER_SET, "ISO-8859-1");
+		}
+
+		if (payloadSize > plan.getPayloadSize())
+			return false;
+
+		int version = Encoder.encode(data, plan.getECLevel(), hints)
+				.getVersion().getVersionNumber();
+
+		return version == getMinimumVersion(payloadSize, plan.getECLevel(),
+				framing == Framing.TAGS);
+	}
+
+	/**
+	 * Prints the plans for the grid of the {@link TestSuite} and cross-checks
+	 * the planner against zxing.
+	 *
+	 * @param args
+	 *            the number of samples to cross-check, defaults to 1000.
+	 * @throws WriterException
+	 * @throws GeneralSecurityException
+	 * @throws NoSignatureSpecHolderException
+	 */
+	public static void main(String[] args) throws WriterException,
+			GeneralSecurityException, NoSignatureSpecHolderException {
+		Security.addProvider(new BouncyCastleProvider());
+		int[] messageLengths = { 65, 591, 1190, 1823, 2140 };
+
+		for (Framing framing : Framing.values()) {
+			for (String algorithm : new String[] { "DSA", "EC", "RSA" }) {
+				for (int keySize : new int[] { 1024, 2048, 3072 }) {
+					StringBuilder line = new StringBuilder(framing + "\t"
+							+ algorithm + "-" + keySize + "\t");
+
+					for (int messageLength : messageLengths) {
+						Plan plan = plan(messageLength, algorithm, keySize,
+								ErrorCorrectionLevel.L, framing);
+						line.append(plan == null ? "-" : plan.getVersion())
+								.append("\t");
+					}
+
+					System.out.println(line);
+				}
+			}
+		}
+
+		int samples = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		long start = System.nanoTime();
+		for (int i = 0; i < samples; i++)
+			plan(i % 3000, "EC", 3072, ErrorCorrectionLevel.M, Framing.BINARY);
+		long planned = System.nanoTime() - start;
+
+		System.out.println("Planning took " + planned / samples
+				+ "ns per configuration.");
+		System.out.println("Cross-check: "
+				+ crossCheck(samples, new Random()) + " of " + samples
+				+ " configurations differ from zxing.");
+	}
+
+	/**
+	 * The planned QR code of a configuration.
+	 */
+	public static class Plan {
+		private final int payloadSize;
+		private final int version;
+		private final ErrorCorrectionLevel ecLevel;
+
+		private Plan(int payloadSize, int version, ErrorCorrectionLevel ecLevel) {
+			this.payloadSize = payloadSize;
+			this.version = version;
+			this.ecLevel = ecLevel;
+		}
+
+		public int getPayloadSize() {
+			return payloadSize;
+		}
+
+		public int getVersion() {
+			return version;
+		}
+
+		public ErrorCorrectionLevel getECLevel() {
+			return ecLevel;
+		}
+
+		/**
+		 * Returns the number of modules per side of the QR code.
+		 *
+		 * @return the module dimension.
+		 */
+		public int getDimension() {
+			return 17 + 4 * version;
+		}
+
+		@Override
+		public String toString() {
+			return "Version " + version + " (" + getDimension() + "x"
+					+ getDimension() + ", EC level " + ecLevel + ", "
+					+ payloadSize + " bytes)";
+		}
+	}
+}
@@ -0,0 +1,322 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.results.AnalysisResult;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.results.Phase;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.results.ResultWriter;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.handler.FileHandler;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.store.ArtifactKey;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.store.ArtifactStore;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.Digests;
+
+/**
+ * This class keeps the output and result records of every cell of the test
+ * grid in the {@link ArtifactStore}, together with a fingerprint of everything
+ * the results depend on: the hash of the input file, the signature
+ * specifications, the key size, the settings of the suite and the
+ * {@link #TOOL_VERSION}. Cells whose fingerprint did not change are replayed
+ * from the store instead of being recomputed.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+public class CellCache {
+	/**
+	 * Version of the analysis, to be increased whenever a change of the code
+	 * changes the results, so all stored cells become stale. The
+	 * implementation version of the package is added if available.
+	 */
+	public static final String TOOL_VERSION = "3"
+			+ (CellCache.class.getPackage().getImplementationVersion() == null ? ""
+					: "/"
+							+ CellCache.class.getPackage()
+									.getImplementationVersion());
+	private static final String KIND = "cell";
+	private static final int MAGIC = 0x51524331; // "QRC1"
+	private final ArtifactStore store;
+	// Hashes of the input files, computed once per run.
+	private final ConcurrentMap<String, String> inputHashes = new ConcurrentHashMap<>();
+	private final AtomicInteger reused = new AtomicInteger();
+	private final AtomicInteger computed = new AtomicInteger();
+
+	public CellCache(ArtifactStore store) {
+		this.store = store;
+	}
+
+	/**
+	 * Returns the SHA-256 hash of an input file in the files directory.
+	 * 
+	 * @param file
+	 *            the input file name.
+	 * @return the hash as hexadecimal string.
+	 * @throws IOException
+	 */
+	public String getInputHash(String file) throws IOException {
+		String hash = inputHashes.get(file);
+
+		if (hash == null) {
+			MessageDigest digest = Digests.newSha256();
+			byte[] buf = new byte[8192];
+
+			try (InputStream in = Files.newInputStream(Paths
+					.get(FileHandler.fileDir + file))) {
+				for (int n; (n = in.read(buf)) > 0;)
+					digest.update(buf, 0, n);
+			}
+
+			hash = Digests.toHex(digest.digest());
+			inputHashes.put(file, hash);
+		}
+
+		return hash;
+	}
+
+	/**
+	 * Combines the parts a cell depends on to its fingerprint.
+	 * 
+	 * @param parts
+	 *            the parts, e.g. input hash, algorithms and settings.
+	 * @return the fingerprint as hexadecimal string.
+	 */
+	public static String fingerprint(Object... parts) {
+		MessageDigest digest = Digests.newSha256();
+
+		digest.update(TOOL_VERSION.getBytes(StandardCharsets.UTF_8));
+		for (Object part : parts) {
+			// Separate the parts, so their boundaries count as well.
+			digest.update((byte) 0);
+			digest.update(String.valueOf(part)
+					.getBytes(StandardCharsets.UTF_8));
+		}
+
+		return Digests.toHex(digest.digest());
+	}
+
+	/**
+	 * Returns the stored cell if its fingerprint matches.
+	 * 
+	 * @param key
+	 *            the key of the cell.
+	 * @param fingerprint
+	 *            the current fingerprint of the cell.
+	 * @return the stored cell, or null if there is none or it is stale.
+	 */
+	public Cell load(ArtifactKey key, String fingerprint) {
+		Cell cell = null;
+
+		try {
+			byte[] data = store.read(key);
+			if (data != null)
+				cell = decode(data);
+		} catch (IOException e) {
+			// Missing or damaged artifact, recompute the cell.
+			cell = null;
+		}
+
+		if (cell == null || !cell.fingerprint.equals(fingerprint)) {
+			computed.incrementAndGet();
+			return null;
+		}
+
+		reused.incrementAndGet();
+
+		return cell;
+	}
+
+	/**
+	 * Stores the output and result records of a cell.
+	 * 
+	 * @param key
+	 *            the key of the cell.
+	 * @param cell
+	 *            the cell.
+	 * @throws IOException
+	 */
+	public void save(ArtifactKey key, Cell cell) throws IOException {
+		store.put(key, encode(cell), KIND);
+	}
+
+	/**
+	 * Returns the store key of the cell of a test. The key contains the
+	 * fingerprint, so switching between settings reuses the cells stored for
+	 * each of them.
+	 * 
+	 * @param file
+	 *            the input file name.
+	 * @param algorithmForSign
+	 *            the signature algorithm.
+	 * @param keySize
+	 *            the key size.
+	 * @param fingerprint
+	 *            the fingerprint of the cell.
+	 * @return the key.
+	 */
+	public static ArtifactKey getKey(String file, String algorithmForSign,
+			int keySize, String fingerprint) {
+		return new ArtifactKey(KIND + "-" + fingerprint, file,
+				algorithmForSign, keySize, null);
+	}
+
+	public int getReused() {
+		return reused.get();
+	}
+
+	public int getComputed() {
+		return computed.get();
+	}
+
+	@Override
+	public String toString() {
+		return "Incremental mode: " + getReused() + " cells reused, "
+				+ getComputed() + " cells computed";
+	}
+
+	private static byte[] encode(Cell cell) throws IOException {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+
+		try (DataOutputStream out = new DataOutputStream(buf)) {
+			out.writeInt(MAGIC);
+			out.writeUTF(cell.fingerprint);
+			byte[] output = cell.output.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(output.length);
+			out.write(output);
+			out.writeInt(cell.results.size());
+
+			for (AnalysisResult result : cell.results) {
+				for (Object value : result.getValues()) {
+					if (value instanceof String)
+						out.writeUTF((String) value);
+					else if (value instanceof Integer)
+						out.writeInt((Integer) value);
+					else
+						out.writeLong((Long) value);
+				}
+			}
+		}
+
+		return buf.toByteArray();
+	}
+
+	private static Cell decode(byte[] data) throws IOException {
+		DataInputStream in = new DataInputStream(
+				new ByteArrayInputStream(data));
+
+		if (in.readInt() != MAGIC)
+			throw new IOException("Not a stored cell.");
+
+		String fingerprint = in.readUTF();
+		byte[] output = new byte[in.readInt()];
+		in.readFully(output);
+		int count = in.readInt();
+		List<AnalysisResult> results = new ArrayList<>(count);
+
+		for (int i = 0; i < count; i++) {
+			Object[] values = new Object[AnalysisResult.COLUMNS.length];
+
+			for (int j = 0; j < values.length; j++) {
+				if (AnalysisResult.TYPES[j] == String.class)
+					values[j] = in.readUTF();
+				else if (AnalysisResult.TYPES[j] == Integer.class)
+					values[j] = in.readInt();
+				else
+					values[j] = in.readLong();
+			}
+
+			long[] timings = new long[Phase.values().length];
+			for (int j = 0; j < timings.length; j++)
+				timings[j] = (Long) values[values.length - timings.length + j];
+
+			results.add(new AnalysisResult((String) values[0],
+					(String) values[1], (String) values[2],
+					(String) values[3], (String) values[4],
+					(Integer) values[5], (Integer) values[6],
+					(Integer) values[7], (Integer) values[8],
+					(Integer) values[9], (Integer) values[10],
+					(String) values[11], (Integer) values[12],
+					(Integer) values[13], timings));
+		}
+
+		return new Cell(fingerprint, new String(output, StandardCharsets.UTF_8),
+				results);
+	}
+
+	/**
+	 * The stored output and result records of a cell.
+	 */
+	public static class Cell {
+		private final String fingerprint;
+		private final String output;
+		private final List<AnalysisResult> results;
+
+		public Cell(String fingerprint, String output,
+				List<AnalysisResult> results) {
+			this.fingerprint = fingerprint;
+			this.output = output;
+			this.results = Collections.unmodifiableList(new ArrayList<>(
+					results));
+		}
+
+		public String getFingerprint() {
+			return fingerprint;
+		}
+
+		public String getOutput() {
+			return output;
+		}
+
+		public List<AnalysisResult> getResults() {
+			return results;
+		}
+	}
+
+	/**
+	 * A result writer collecting the records of a cell while passing them on
+	 * to the result writer of the suite.
+	 */
+	public static class RecordingResultWriter implements ResultWriter {
+		private final ResultWriter delegate;
+		private final List<AnalysisResult> results = new ArrayList<>();
+
+		public RecordingResultWriter(ResultWriter delegate) {
+			this.delegate = delegate;
+		}
+
+		public List<AnalysisResult> getResults() {
+			return results;
+		}
+
+		@Override
+		public void write(AnalysisResult result) throws IOException {
+			results.add(result);
+			delegate.write(result);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			delegate.flush();
+		}
+
+		/**
+		 * Does not close the result writer of the suite.
+		 */
+		@Override
+		public void close() {
+		}
+	}
+}
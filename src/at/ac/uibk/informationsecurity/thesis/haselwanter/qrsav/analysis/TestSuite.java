@@ -1,25 +1,261 @@
 package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.security.Security;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.output.CodeWriter;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.output.CodeWriters;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.results.AnalysisResult;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.results.LatencyRecorder;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.results.ResultWriter;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.results.ResultWriters;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.results.Statistics;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.handler.FileHandler;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.store.ArtifactKey;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.store.ArtifactStore;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.KeyPairPool;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpec;
 import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpecHolder;
 
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+/**
+ * Runs the {@link AnalysisTest} for every combination of signature algorithm,
+ * key size and test file. Besides DSA, ECDSA over P-192/224/256 and RSA with
+ * the key sizes 1024, 2048 and 3072 the grid covers RSA-PSS with the same
+ * sizes, ECDSA over P-384, brainpoolP256r1 and brainpoolP384r1, Ed25519 and
+ * Ed448. Every test reports the signing and verification time and the QR
+ * code version. By default the tests run one after another. Use
+ * '--parallel [threads]' to schedule the whole grid on a pool of worker
+ * threads (defaults to the number of available processors) or '--virtual' to
+ * run each test on its own virtual thread if the JVM supports them. In both
+ * modes the results are printed in the order of the grid. With '--key-pool
+ * [target]' missing key pairs are pre-generated in the background for every
+ * algorithm and key size of the grid. '--format png|svg|raw|imageio' selects
+ * the format of the saved QR codes and '--deflate [level]' the compression
+ * level of PNG images. '--framing tags|binary|binary_raw' selects how
+ * message and signature are stored in the QR codes. '--ec-levels
+ * [L,M,Q,H]' encodes every signed message at each of the given error
+ * correction levels (all four if omitted) instead of only level L. With
+ * '--results csv|jsonl|bin [file]' every result is written as a record to a
+ * file instead of being printed, by default to 'results.[extension]' in the
+ * files directory. '--latency' records the duration of every phase of the
+ * tests into histograms and prints their percentiles per algorithm, key size
+ * and test file at the end. With '--store' signatures, public keys and QR
+ * codes are kept in the content-addressed {@link ArtifactStore} in the
+ * 'store' directory of the files directory instead of being overwritten by
+ * later tests. '--incremental' additionally stores the output and records of
+ * every cell with a fingerprint of its input file, specifications, key size,
+ * settings and the tool version, and only recomputes cells whose fingerprint
+ * changed. The other cells are replayed from the store, including their
+ * original timings, but without recording latencies.
+ * <p>
+ * '--warmup n', '--iterations n' and '--forks n' switch to the measurement
+ * mode: every cell of the grid runs n warmup iterations whose results are
+ * discarded, followed by the measured iterations (5 if not given). With forks
+ * each cell is measured in n fresh JVMs started with the same JVM arguments.
+ * The mean, standard deviation and 99% confidence interval of the measured
+ * execution times are printed per cell. Tests are not run in parallel in this
+ * mode, and results and latencies are not recorded by forked runs.
+ *
+ * @author Stefan Haselwanter
+ *
+ */
 public class TestSuite {
+	private static final String FORK_RESULT = "FORK-RESULT";
+	private static final String STORE_DIR = "store/";
+	private static final PrintStream NULL_STREAM = new PrintStream(
+			new OutputStream() {
+				@Override
+				public void write(int b) {
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len) {
+				}
+			});
+
 	public static void main(String[] args) {
 		Security.addProvider(new BouncyCastleProvider());
-		SignatureSpecHolder holder = SignatureSpecHolder.getInstance();
 
-		// Signature algorithms to test.
-		Map<String, String> algorithms = new HashMap<String, String>();
-		algorithms.put("DSA", "SHA256withDSA");
-		algorithms.put("EC", "SHA256withECDSA");
-		algorithms.put("RSA", "SHA256withRSA");
+		boolean parallel = false;
+		boolean virtual = false;
+		Options options = new Options();
+		String format = "png";
+		int level = -1;
+		int threads = Runtime.getRuntime().availableProcessors();
+		String resultFormat = null;
+		String resultFile = null;
+		boolean store = false;
+		boolean incremental = false;
+		int warmup = 0;
+		int iterations = 0;
+		int forks = 0;
+		int cell = -1;
+		// Options passed on to forked JVMs.
+		List<String> forwarded = new ArrayList<String>();
+
+		for (int i = 0; i < args.length; i++) {
+			int first = i;
+			boolean forward = true;
+
+			if (args[i].equals("--parallel")) {
+				forward = false;
+				parallel = true;
+				if (i + 1 < args.length && args[i + 1].matches("\\d+"))
+					threads = Math.max(1, Integer.parseInt(args[++i]));
+			} else if (args[i].equals("--virtual")) {
+				forward = false;
+				parallel = true;
+				virtual = true;
+			} else if (args[i].equals("--key-pool")) {
+				options.useKeyPairPool = true;
+				if (i + 1 < args.length && args[i + 1].matches("\\d+"))
+					KeyPairPool.setDefaultTarget(Math.max(1,
+							Integer.parseInt(args[++i])));
+			} else if (args[i].equals("--format") && i + 1 < args.length) {
+				format = args[++i];
+			} else if (args[i].equals("--framing") && i + 1 < args.length) {
+				options.framing = AnalysisTest.Framing.valueOf(args[++i]
+						.toUpperCase());
+			} else if (args[i].equals("--ec-levels")) {
+				String levels = "L,M,Q,H";
+				if (i + 1 < args.length && !args[i + 1].startsWith("--"))
+					levels = args[++i];
+				options.ecLevels = parseLevels(levels);
+			} else if (args[i].equals("--results") && i + 1 < args.length) {
+				forward = false;
+				resultFormat = args[++i];
+				if (i + 1 < args.length && !args[i + 1].startsWith("--"))
+					resultFile = args[++i];
+			} else if (args[i].equals("--store")) {
+				store = true;
+			} else if (args[i].equals("--incremental")) {
+				forward = false;
+				store = true;
+				incremental = true;
+			} else if (args[i].equals("--latency")) {
+				forward = false;
+				options.latencyRecorder = new LatencyRecorder();
+			} else if (args[i].equals("--warmup") && i + 1 < args.length) {
+				warmup = Math.max(0, Integer.parseInt(args[++i]));
+			} else if (args[i].equals("--iterations") && i + 1 < args.length) {
+				iterations = Math.max(1, Integer.parseInt(args[++i]));
+			} else if (args[i].equals("--forks") && i + 1 < args.length) {
+				forward = false;
+				forks = Math.max(0, Integer.parseInt(args[++i]));
+			} else if (args[i].equals("--cell") && i + 1 < args.length) {
+				// Internal option of forked JVMs measuring a single cell.
+				forward = false;
+				cell = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--deflate") && i + 1 < args.length) {
+				level = Integer.parseInt(args[++i]);
+			} else {
+				forward = false;
+				System.err.println("Ignoring unknown option '" + args[i]
+						+ "'");
+			}
+
+			if (forward)
+				for (int j = first; j <= i; j++)
+					forwarded.add(args[j]);
+		}
+
+		boolean measuring = warmup > 0 || iterations > 0 || forks > 0;
+		if (measuring && iterations == 0)
+			iterations = 5;
+		if (measuring && incremental) {
+			System.err.println("Measurement mode recomputes every cell.");
+			incremental = false;
+		}
+		if (measuring && parallel) {
+			System.err.println("Measurement mode runs the tests sequentially.");
+			parallel = false;
+		}
+		if (forks > 0
+				&& (resultFormat != null || options.latencyRecorder != null)) {
+			System.err.println("Results and latencies are not recorded by "
+					+ "forked runs.");
+			resultFormat = null;
+			options.latencyRecorder = null;
+		}
+
+		options.codeWriter = CodeWriters.forName(format, level);
+		options.codeFormat = format + (level >= 0 ? ":" + level : "");
+
+		if (resultFormat != null) {
+			if (resultFile == null)
+				resultFile = FileHandler.fileDir + "results."
+						+ ResultWriters.getExtension(resultFormat);
+
+			try {
+				options.resultWriter = ResultWriters.open(resultFormat,
+						resultFile);
+			} catch (IOException e) {
+				System.err.println("Could not open result file due to '"
+						+ e.getMessage() + "'");
+				return;
+			}
+		}
+
+		if (store) {
+			try {
+				options.artifactStore = ArtifactStore.open(Paths
+						.get(FileHandler.fileDir + STORE_DIR));
+			} catch (IOException e) {
+				System.err.println("Could not open artifact store due to '"
+						+ e.getMessage() + "'");
+				return;
+			}
+
+			if (incremental)
+				options.cellCache = new CellCache(options.artifactStore);
+		}
+
+		// Signature specifications to test with their key sizes.
+		List<Integer> keySizes = new ArrayList<Integer>();
+		keySizes.add(1024);
+		keySizes.add(2048);
+		keySizes.add(3072);
+
+		Map<SignatureSpec, List<Integer>> schemes = new LinkedHashMap<SignatureSpec, List<Integer>>();
+		schemes.put(new SignatureSpec("DSA", "SHA256withDSA", "BC"), keySizes);
+		schemes.put(new SignatureSpec("EC", "SHA256withECDSA", "BC"), keySizes);
+		schemes.put(new SignatureSpec("RSA", "SHA256withRSA", "BC"), keySizes);
+		schemes.put(new SignatureSpec("RSASSA-PSS", "SHA256withRSAandMGF1",
+				"BC"), keySizes);
+		// Key sizes below 1024 are the sizes of the curves or EdDSA keys.
+		schemes.put(new SignatureSpec("EC", "SHA384withECDSA", "BC"),
+				Collections.singletonList(384));
+		schemes.put(new SignatureSpec("EC", "SHA256withECDSA", "BC",
+				"brainpoolP256r1"), Collections.singletonList(256));
+		schemes.put(new SignatureSpec("EC", "SHA384withECDSA", "BC",
+				"brainpoolP384r1"), Collections.singletonList(384));
+		schemes.put(new SignatureSpec("Ed25519", "Ed25519", "BC"),
+				Collections.singletonList(256));
+		schemes.put(new SignatureSpec("Ed448", "Ed448", "BC"),
+				Collections.singletonList(456));
 
 		List<String> files = new ArrayList<String>();
 		files.add("test010.txt");
@@ -28,37 +264,484 @@ public class TestSuite {
 		files.add("test300.txt");
 		files.add("test350.txt");
 
-		List<Integer> keySizes = new ArrayList<Integer>();
-		keySizes.add(1024);
-		keySizes.add(2048);
-		keySizes.add(3072);
+		List<TestCase> grid = new ArrayList<TestCase>();
+		for (Map.Entry<SignatureSpec, List<Integer>> scheme : schemes
+				.entrySet())
+			for (Integer size : scheme.getValue())
+				for (String test : files)
+					grid.add(new TestCase(scheme.getKey(), size, test, options));
 
-		for (String specs : algorithms.keySet()) {
-			holder.setSpecs(specs, algorithms.get(specs), "BC");
+		if (cell >= 0)
+			grid = grid.subList(cell, cell + 1);
 
-			for (Integer size : keySizes) {
-				for (String test : files) {
-					System.out.println("Test: " + holder.getAlgorithmForSign()
-							+ "\t Key size: " + size + "\t\t" + test);
-					Thread t = new Thread(new AnalysisTest(holder, size, test));
+		// Forked JVMs start their own pools.
+		if (options.useKeyPairPool && forks == 0)
+			startKeyPairPools(grid);
 
-					long start = System.currentTimeMillis();
-					t.start();
+		if (forks > 0) {
+			forwarded.add("--iterations");
+			forwarded.add(String.valueOf(iterations));
+			runForked(grid, forks, forwarded);
+		} else if (measuring) {
+			runMeasured(grid, warmup, iterations, cell >= 0);
+		} else if (parallel) {
+			ExecutorService executor = createExecutor(threads, virtual);
+			try {
+				runParallel(grid, executor);
+			} finally {
+				executor.shutdown();
+			}
+		} else {
+			runSequential(grid);
+		}
+
+		if (options.resultWriter != null) {
+			try {
+				options.resultWriter.close();
+				System.out.println("Results written to '" + resultFile + "'.");
+			} catch (IOException e) {
+				System.err.println("Writing results failed due to '"
+						+ e.getMessage() + "'");
+			}
+		}
+
+		if (options.latencyRecorder != null)
+			options.latencyRecorder.report(System.out);
+
+		if (options.cellCache != null)
+			System.out.println(options.cellCache);
+
+		if (options.artifactStore != null) {
+			System.out.println(options.artifactStore);
+			try {
+				options.artifactStore.close();
+			} catch (IOException e) {
+				System.err.println("Closing artifact store failed due to '"
+						+ e.getMessage() + "'");
+			}
+		}
+
+		for (KeyPairPool pool : KeyPairPool.getPools())
+			System.out.println(pool);
+		System.out.println(FileHandler.getKeyCache());
+		System.out.println(FileHandler.getSignatureCache());
+
+		System.out.println("Analysis finished.");
+	}
+
+	/**
+	 * Starts filling the key pair pools of all algorithms and key sizes of the
+	 * grid, so key generation overlaps with the running tests.
+	 *
+	 * @param grid
+	 *            the test cases.
+	 */
+	public static void startKeyPairPools(List<TestCase> grid) {
+		for (TestCase test : grid) {
+			try {
+				KeyPairPool.getInstance(test.createHolder(), test.keySize);
+			} catch (Exception e) {
+				System.err.println("Key pair pool not started due to '"
+						+ e.getMessage() + "'");
+			}
+		}
+	}
 
+	/**
+	 * Runs the test cases one after another.
+	 *
+	 * @param grid
+	 *            the test cases.
+	 */
+	public static void runSequential(List<TestCase> grid) {
+		for (TestCase test : grid)
+			test.run(System.out, System.err);
+	}
+
+	/**
+	 * Submits all test cases to the executor and prints their results in the
+	 * order of the grid as soon as they are available.
+	 *
+	 * @param grid
+	 *            the test cases.
+	 * @param executor
+	 *            the executor running the test cases.
+	 */
+	public static void runParallel(List<TestCase> grid,
+			ExecutorService executor) {
+		List<Future<String[]>> results = new ArrayList<Future<String[]>>();
+
+		for (final TestCase test : grid) {
+			results.add(executor.submit(new Callable<String[]>() {
+				@Override
+				public String[] call() {
+					ByteArrayOutputStream out = new ByteArrayOutputStream();
+					ByteArrayOutputStream err = new ByteArrayOutputStream();
+					test.run(new PrintStream(out, true), new PrintStream(err,
+							true));
+
+					return new String[] { out.toString(), err.toString() };
+				}
+			}));
+		}
+
+		for (Future<String[]> result : results) {
+			try {
+				String[] output = result.get();
+				System.out.print(output[0]);
+				System.err.print(output[1]);
+			} catch (InterruptedException | ExecutionException e) {
+				System.err.println("Test execution failed due to '"
+						+ e.getMessage() + "'");
+			}
+		}
+	}
+
+	/**
+	 * Runs the warmup iterations of every test case, discarding their
+	 * results, followed by the measured iterations and prints the statistics
+	 * of the measured execution times per test case.
+	 *
+	 * @param grid
+	 *            the test cases.
+	 * @param warmup
+	 *            the number of warmup iterations per test case.
+	 * @param iterations
+	 *            the number of measured iterations per test case.
+	 * @param fork
+	 *            true if running in a forked JVM, which prints the raw
+	 *            execution times for the parent JVM instead.
+	 */
+	public static void runMeasured(List<TestCase> grid, int warmup,
+			int iterations, boolean fork) {
+		for (TestCase test : grid) {
+			Options warmupOptions = test.options.withoutSinks();
+			for (int i = 0; i < warmup; i++)
+				test.run(NULL_STREAM, System.err, warmupOptions);
+
+			Statistics stats = new Statistics();
+			StringBuilder times = new StringBuilder(FORK_RESULT);
+			for (int i = 0; i < iterations; i++) {
+				long nanos = test.run(NULL_STREAM, System.err, test.options);
+				stats.add(nanos / 1e6);
+				times.append(' ').append(nanos);
+			}
+
+			if (fork)
+				System.out.println(times);
+			else
+				System.out.println(test.getName() + "\t" + stats + " ms");
+		}
+	}
+
+	/**
+	 * Measures every test case in fresh JVMs and prints the statistics of the
+	 * execution times of all forks per test case.
+	 *
+	 * @param grid
+	 *            the test cases.
+	 * @param forks
+	 *            the number of JVMs per test case.
+	 * @param options
+	 *            the command line options of the forked JVMs, which select
+	 *            the warmup and measured iterations.
+	 */
+	public static void runForked(List<TestCase> grid, int forks,
+			List<String> options) {
+		List<String> command = new ArrayList<String>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java")
+				.toString());
+		command.addAll(ManagementFactory.getRuntimeMXBean()
+				.getInputArguments());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(TestSuite.class.getName());
+		command.addAll(options);
+		command.add("--cell");
+
+		for (int cell = 0; cell < grid.size(); cell++) {
+			Statistics stats = new Statistics();
+			command.add(String.valueOf(cell));
+
+			for (int fork = 0; fork < forks; fork++) {
+				try {
+					runFork(command, stats);
+				} catch (IOException e) {
+					System.err.println("Fork failed due to '" + e.getMessage()
+							+ "'");
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+
+			command.remove(command.size() - 1);
+			System.out.println(grid.get(cell).getName() + "\t" + stats
+					+ " ms");
+		}
+	}
+
+	private static void runFork(List<String> command, Statistics stats)
+			throws IOException, InterruptedException {
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+		Process process = builder.start();
+
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(
+				process.getInputStream(), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (!line.startsWith(FORK_RESULT))
+					continue;
+
+				String[] times = line.split(" ");
+				for (int i = 1; i < times.length; i++)
+					stats.add(Long.parseLong(times[i]) / 1e6);
+			}
+		}
+
+		int exitCode = process.waitFor();
+		if (exitCode != 0)
+			throw new IOException("Forked JVM exited with code " + exitCode);
+	}
+
+	private static ErrorCorrectionLevel[] parseLevels(String levels) {
+		String[] names = levels.split(",");
+		ErrorCorrectionLevel[] ecLevels = new ErrorCorrectionLevel[names.length];
+
+		for (int i = 0; i < names.length; i++)
+			ecLevels[i] = ErrorCorrectionLevel.valueOf(names[i].trim()
+					.toUpperCase());
+
+		return ecLevels;
+	}
+
+	private static ExecutorService createExecutor(int threads, boolean virtual) {
+		if (virtual) {
+			// Virtual threads are only available on Java 21 and later.
+			try {
+				return (ExecutorService) Executors.class.getMethod(
+						"newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (ReflectiveOperationException e) {
+				System.err.println("Virtual threads not supported, using "
+						+ threads + " worker threads instead.");
+			}
+		}
+
+		return Executors.newFixedThreadPool(threads);
+	}
+
+	/**
+	 * A single cell of the test grid. The specifications of a test case are
+	 * an immutable {@link SignatureSpec}, so concurrently running cases can
+	 * share them and the JCA handles resolved for them.
+	 */
+	public static class TestCase {
+		private final SignatureSpec spec;
+		private final int keySize;
+		private final String file;
+		private final Options options;
+
+		public TestCase(String algorithmForKeys, String algorithmForSign,
+				String provider, int keySize, String file, Options options) {
+			this(new SignatureSpec(algorithmForKeys, algorithmForSign,
+					provider), keySize, file, options);
+		}
+
+		public TestCase(SignatureSpec spec, int keySize, String file,
+				Options options) {
+			this.spec = spec;
+			this.keySize = keySize;
+			this.file = file;
+			this.options = options;
+		}
+
+		public SignatureSpecHolder createHolder() {
+			return SignatureSpecHolder.of(spec);
+		}
+
+		public String getName() {
+			return spec.getName() + "-" + keySize + " " + file;
+		}
+
+		/**
+		 * Runs the test with the options of the test case.
+		 *
+		 * @param out
+		 *            the stream for status messages and results.
+		 * @param err
+		 *            the stream for error messages.
+		 * @return the execution time of the test in nanoseconds.
+		 */
+		public long run(PrintStream out, PrintStream err) {
+			return run(out, err, options);
+		}
+
+		/**
+		 * Runs the test with specific options, e.g. without result sinks for
+		 * warmup iterations.
+		 *
+		 * @param out
+		 *            the stream for status messages and results.
+		 * @param err
+		 *            the stream for error messages.
+		 * @param options
+		 *            the options applied to the test.
+		 * @return the execution time of the test in nanoseconds.
+		 */
+		public long run(PrintStream out, PrintStream err, Options options) {
+			if (options.cellCache == null)
+				return execute(out, err, options);
+
+			long start = System.nanoTime();
+			String fingerprint;
+			try {
+				fingerprint = getFingerprint(options);
+			} catch (IOException e) {
+				err.println("Fingerprinting failed due to '" + e.getMessage()
+						+ "'");
+				return execute(out, err, options);
+			}
+
+			ArtifactKey key = CellCache.getKey(file, spec.getName(), keySize,
+					fingerprint);
+
+			CellCache.Cell cell = options.cellCache.load(key, fingerprint);
+			if (cell != null) {
+				out.println("Reusing the stored results of the unchanged cell.");
+				out.print(cell.getOutput());
+				if (options.resultWriter != null) {
 					try {
-						t.join();
-					} catch (InterruptedException e) {
-						System.err.println("Test execution failed due to '"
+						for (AnalysisResult result : cell.getResults())
+							options.resultWriter.write(result);
+					} catch (IOException e) {
+						err.println("Writing stored results failed due to '"
 								+ e.getMessage() + "'");
 					}
+				}
 
-					System.out.println("Execution of '" + specs + "-" + size
-							+ "' took: " + (System.currentTimeMillis() - start)
-							+ "ms.\n");
+				return System.nanoTime() - start;
+			}
+
+			// Capture output and records of the test to store them.
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			ByteArrayOutputStream errors = new ByteArrayOutputStream();
+			Options recording = options.copy();
+			CellCache.RecordingResultWriter recorder = null;
+			if (options.resultWriter != null) {
+				recorder = new CellCache.RecordingResultWriter(
+						options.resultWriter);
+				recording.resultWriter = recorder;
+			}
+
+			long nanos = execute(new PrintStream(output, true),
+					new PrintStream(errors, true), recording);
+			String text = new String(output.toByteArray(),
+					StandardCharsets.UTF_8);
+			out.print(text);
+			err.print(new String(errors.toByteArray(), StandardCharsets.UTF_8));
+
+			// Cells with errors are computed again next time.
+			if (errors.size() == 0) {
+				List<AnalysisResult> results = recorder == null ? Collections
+						.<AnalysisResult> emptyList() : recorder.getResults();
+				try {
+					options.cellCache.save(key, new CellCache.Cell(
+							fingerprint, text, results));
+				} catch (IOException e) {
+					err.println("Storing the results failed due to '"
+							+ e.getMessage() + "'");
 				}
 			}
+
+			return nanos;
 		}
 
-		System.out.println("Analysis finished.");
+		private String getFingerprint(Options options) throws IOException {
+			return CellCache.fingerprint(
+					options.cellCache.getInputHash(file),
+					spec.getKeyName(), spec.getName(), spec.getProvider(),
+					keySize, options.framing,
+					Arrays.toString(options.ecLevels), options.codeFormat,
+					options.resultWriter != null);
+		}
+
+		private long execute(PrintStream out, PrintStream err, Options options) {
+			SignatureSpecHolder holder = createHolder();
+
+			out.println("Test: " + spec.getName() + "\t Key size: "
+					+ keySize + "\t\t" + file);
+			AnalysisTest test = new AnalysisTest(holder, keySize, file);
+			test.setOutput(out, err);
+			options.apply(test);
+
+			long start = System.nanoTime();
+			try {
+				test.run();
+			} catch (RuntimeException e) {
+				err.println("Test execution failed due to '" + e + "'");
+			}
+			long nanos = System.nanoTime() - start;
+
+			out.println("Execution of '" + spec.getKeyName() + "-"
+					+ keySize + "' took: " + nanos / 1000000 + "ms.\n");
+
+			return nanos;
+		}
+	}
+
+	/**
+	 * The settings of the suite applied to every {@link AnalysisTest}.
+	 */
+	public static class Options {
+		private boolean useKeyPairPool = false;
+		private CodeWriter codeWriter = CodeWriters.forName("png");
+		private AnalysisTest.Framing framing = AnalysisTest.Framing.TAGS;
+		private ErrorCorrectionLevel[] ecLevels = { ErrorCorrectionLevel.L };
+		private ResultWriter resultWriter;
+		private LatencyRecorder latencyRecorder;
+		private ArtifactStore artifactStore;
+		private String codeFormat = "png";
+		private CellCache cellCache;
+
+		/**
+		 * Returns a copy of the options which neither writes results nor
+		 * records latencies, nor reuses stored results.
+		 *
+		 * @return the copy.
+		 */
+		public Options withoutSinks() {
+			Options copy = copy();
+			copy.resultWriter = null;
+			copy.latencyRecorder = null;
+			copy.cellCache = null;
+
+			return copy;
+		}
+
+		private Options copy() {
+			Options copy = new Options();
+			copy.useKeyPairPool = useKeyPairPool;
+			copy.codeWriter = codeWriter;
+			copy.framing = framing;
+			copy.ecLevels = ecLevels;
+			copy.resultWriter = resultWriter;
+			copy.latencyRecorder = latencyRecorder;
+			copy.artifactStore = artifactStore;
+			copy.codeFormat = codeFormat;
+			copy.cellCache = cellCache;
+
+			return copy;
+		}
+
+		public void apply(AnalysisTest test) {
+			test.setUseKeyPairPool(useKeyPairPool);
+			test.setCodeWriter(codeWriter);
+			test.setFraming(framing);
+			test.setErrorCorrectionLevels(ecLevels);
+			test.setResultWriter(resultWriter);
+			test.setLatencyRecorder(latencyRecorder);
+			test.setArtifactStore(artifactStore);
+		}
 	}
 }
@@ -0,0 +1,83 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.output;
+
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+
+/**
+ * This class describes how the modules of a QR code are placed on an image of
+ * a requested size. Every module becomes a square of {@link #getModuleSize()}
+ * pixels and the code is centered, so the padding includes both the quiet zone
+ * and the extra white pixels to accommodate the requested dimensions. For
+ * example, if the input is 25x25 the QR code will be 33x33 including the quiet
+ * zone. If the requested size is 200x160, the module size will be 4, for a QR
+ * code of 132x132. These will handle all the padding from 100x100 (the actual
+ * QR code) up to 200x160.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+public class CodeLayout {
+	private final int inputWidth;
+	private final int inputHeight;
+	private final int width;
+	private final int height;
+	private final int moduleSize;
+	private final int leftPadding;
+	private final int topPadding;
+
+	/**
+	 * Computes the layout of the module matrix on an image of at least the
+	 * requested size.
+	 * 
+	 * @param input
+	 *            the module matrix of the QR code.
+	 * @param width
+	 *            the requested image width.
+	 * @param height
+	 *            the requested image height.
+	 * @param quietZone
+	 *            the size of the quiet zone in modules, 4 is standard.
+	 */
+	public CodeLayout(ByteMatrix input, int width, int height, int quietZone) {
+		if (input == null) {
+			throw new IllegalStateException();
+		}
+		inputWidth = input.getWidth();
+		inputHeight = input.getHeight();
+		int qrWidth = inputWidth + (quietZone * 2);
+		int qrHeight = inputHeight + (quietZone * 2);
+		this.width = Math.max(width, qrWidth);
+		this.height = Math.max(height, qrHeight);
+
+		moduleSize = Math.min(this.width / qrWidth, this.height / qrHeight);
+		leftPadding = (this.width - (inputWidth * moduleSize)) / 2;
+		topPadding = (this.height - (inputHeight * moduleSize)) / 2;
+	}
+
+	public int getInputWidth() {
+		return inputWidth;
+	}
+
+	public int getInputHeight() {
+		return inputHeight;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getModuleSize() {
+		return moduleSize;
+	}
+
+	public int getLeftPadding() {
+		return leftPadding;
+	}
+
+	public int getTopPadding() {
+		return topPadding;
+	}
+}
@@ -0,0 +1,117 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.output;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.Arrays;
+
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+
+/**
+ * This class renders the module matrix of a QR code into a 1-bit image. Each
+ * row of modules is packed into one scanline, where runs of black modules are
+ * cleared byte-wise, and the scanline is then copied for every pixel row of
+ * the module. Note that the input matrix uses 0 == white, 1 == black.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+public class CodeRasterizer {
+	private CodeRasterizer() {
+
+	}
+
+	/**
+	 * Renders the module matrix into an image of type
+	 * {@link BufferedImage#TYPE_BYTE_BINARY} of at least the requested size.
+	 * 
+	 * @param input
+	 *            the module matrix of the QR code.
+	 * @param width
+	 *            the requested image width.
+	 * @param height
+	 *            the requested image height.
+	 * @param quietZone
+	 *            the size of the quiet zone in modules, 4 is standard.
+	 * @return the image of the QR code.
+	 */
+	public static BufferedImage rasterize(ByteMatrix input, int width,
+			int height, int quietZone) {
+		CodeLayout layout = new CodeLayout(input, width, height, quietZone);
+		// Default palette of binary images: 0 == black, 1 == white.
+		BufferedImage img = new BufferedImage(layout.getWidth(),
+				layout.getHeight(), BufferedImage.TYPE_BYTE_BINARY);
+		byte[] pixels = ((DataBufferByte) img.getRaster().getDataBuffer())
+				.getData();
+		int stride = (layout.getWidth() + 7) / 8;
+		byte[] row = new byte[stride];
+
+		Arrays.fill(pixels, (byte) 0xFF);
+
+		int multiple = layout.getModuleSize();
+		for (int y = 0; y < layout.getInputHeight(); y++) {
+			packRow(input, y, layout, row, 0);
+
+			int offset = (layout.getTopPadding() + y * multiple) * stride;
+			for (int i = 0; i < multiple; i++, offset += stride)
+				System.arraycopy(row, 0, pixels, offset, stride);
+		}
+
+		return img;
+	}
+
+	/**
+	 * Packs one row of modules into a scanline of the image, one bit per pixel
+	 * with the most significant bit first and 1 == white.
+	 * 
+	 * @param input
+	 *            the module matrix of the QR code.
+	 * @param y
+	 *            the module row.
+	 * @param layout
+	 *            the layout of the image.
+	 * @param row
+	 *            the buffer containing the scanline.
+	 * @param offset
+	 *            the offset of the scanline in the buffer.
+	 */
+	public static void packRow(ByteMatrix input, int y, CodeLayout layout,
+			byte[] row, int offset) {
+		int stride = (layout.getWidth() + 7) / 8;
+		Arrays.fill(row, offset, offset + stride, (byte) 0xFF);
+
+		int multiple = layout.getModuleSize();
+		int left = layout.getLeftPadding() + offset * 8;
+		int inputWidth = layout.getInputWidth();
+		byte[] modules = input.getArray()[y];
+
+		for (int x = 0; x < inputWidth; x++) {
+			if (modules[x] != 1)
+				continue;
+
+			// Clear the whole run of black modules at once.
+			int end = x + 1;
+			while (end < inputWidth && modules[end] == 1)
+				end++;
+
+			clearBits(row, left + x * multiple, left + end * multiple);
+			x = end;
+		}
+	}
+
+	private static void clearBits(byte[] row, int from, int to) {
+		int first = from >> 3;
+		int last = (to - 1) >> 3;
+		int firstMask = 0xFF >>> (from & 7);
+		int lastMask = 0xFF << (7 - ((to - 1) & 7));
+
+		if (first == last) {
+			row[first] &= ~(firstMask & lastMask);
+			return;
+		}
+
+		row[first] &= ~firstMask;
+		for (int i = first + 1; i < last; i++)
+			row[i] = 0;
+		row[last] &= ~lastMask;
+	}
+}
@@ -0,0 +1,39 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.output;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+
+/**
+ * A code writer stores the module matrix of a QR code in a specific file
+ * format. Implementations write the output directly to the channel.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+public interface CodeWriter {
+	/**
+	 * Returns the file extension of the format without the leading dot.
+	 * 
+	 * @return the file extension.
+	 */
+	String getExtension();
+
+	/**
+	 * Writes the module matrix to the channel. Formats with pixels use the
+	 * {@link CodeLayout} of the requested size.
+	 * 
+	 * @param input
+	 *            the module matrix of the QR code.
+	 * @param size
+	 *            the requested width and height of the image.
+	 * @param quietZone
+	 *            the size of the quiet zone in modules, 4 is standard.
+	 * @param channel
+	 *            the channel to write to.
+	 * @throws IOException
+	 */
+	void write(ByteMatrix input, int size, int quietZone,
+			WritableByteChannel channel) throws IOException;
+}
@@ -0,0 +1,55 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.output;
+
+import java.util.zip.Deflater;
+
+/**
+ * This class creates the {@link CodeWriter} of a format by its name.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+public class CodeWriters {
+	private CodeWriters() {
+
+	}
+
+	/**
+	 * Returns the code writer of a specific format.
+	 * 
+	 * @param format
+	 *            'png' for 1-bit PNG images, 'svg' for vector graphics, 'raw'
+	 *            for packed bits or 'imageio' for PNG images written by
+	 *            ImageIO.
+	 * @param level
+	 *            the deflate level of PNG images, or -1 for the default level.
+	 * @return the code writer.
+	 */
+	public static CodeWriter forName(String format, int level) {
+		switch (format.toLowerCase()) {
+		case "png":
+			return new PngCodeWriter(level);
+		case "svg":
+			return new SvgCodeWriter();
+		case "raw":
+			return new RawCodeWriter();
+		case "imageio":
+			return new ImageCodeWriter();
+
+		default:
+			throw new IllegalArgumentException("Unknown code format '"
+					+ format + "'.");
+		}
+	}
+
+	/**
+	 * Returns the code writer of a specific format with the default deflate
+	 * level.
+	 * 
+	 * @param format
+	 *            the name of the format.
+	 * @return the code writer.
+	 */
+	public static CodeWriter forName(String format) {
+		return forName(format, Deflater.DEFAULT_COMPRESSION);
+	}
+}
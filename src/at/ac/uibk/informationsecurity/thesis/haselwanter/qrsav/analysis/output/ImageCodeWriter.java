@@ -0,0 +1,34 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+import javax.imageio.ImageIO;
+
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+
+/**
+ * This class writes QR codes as PNG images using {@link ImageIO}, rendering
+ * the whole image with the {@link CodeRasterizer} first.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+public class ImageCodeWriter implements CodeWriter {
+	@Override
+	public String getExtension() {
+		return "png";
+	}
+
+	@Override
+	public void write(ByteMatrix input, int size, int quietZone,
+			WritableByteChannel channel) throws IOException {
+		OutputStream out = Channels.newOutputStream(channel);
+
+		ImageIO.write(CodeRasterizer.rasterize(input, size, size, quietZone),
+				"png", out);
+		out.flush();
+	}
+}
@@ -0,0 +1,154 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.output;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+
+/**
+ * This class writes QR codes as 1-bit grayscale PNG images. The scanlines are
+ * packed like in {@link CodeRasterizer} and deflated row by row into IDAT
+ * chunks, so no image is built in memory.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+public class PngCodeWriter implements CodeWriter {
+	private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G',
+			'\r', '\n', 0x1A, '\n' };
+	// Maximum size of the data of a single IDAT chunk.
+	private static final int CHUNK_SIZE = 1 << 16;
+	private final int level;
+
+	/**
+	 * Creates a PNG writer with the default compression level.
+	 */
+	public PngCodeWriter() {
+		this(Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Creates a PNG writer with a specific compression level.
+	 * 
+	 * @param level
+	 *            the deflate level from 0 (no compression) to 9 (best
+	 *            compression), or -1 for the default level.
+	 */
+	public PngCodeWriter(int level) {
+		if (level < -1 || level > 9)
+			throw new IllegalArgumentException("Invalid deflate level '"
+					+ level + "'.");
+
+		this.level = level;
+	}
+
+	@Override
+	public String getExtension() {
+		return "png";
+	}
+
+	@Override
+	public void write(ByteMatrix input, int size, int quietZone,
+			WritableByteChannel channel) throws IOException {
+		CodeLayout layout = new CodeLayout(input, size, size, quietZone);
+		int stride = (layout.getWidth() + 7) / 8;
+
+		channel.write(ByteBuffer.wrap(SIGNATURE));
+
+		ByteBuffer header = ByteBuffer.allocate(13);
+		header.putInt(layout.getWidth()).putInt(layout.getHeight());
+		// Bit depth 1, grayscale, deflate, adaptive filtering, no interlace.
+		header.put((byte) 1).put((byte) 0).put((byte) 0).put((byte) 0)
+				.put((byte) 0);
+		writeChunk(channel, "IHDR", header.array(), 13);
+
+		// Every scanline starts with filter type 0 (none).
+		byte[] white = new byte[stride + 1];
+		Arrays.fill(white, 1, white.length, (byte) 0xFF);
+		byte[] row = new byte[stride + 1];
+		byte[] out = new byte[CHUNK_SIZE];
+		int[] length = { 0 };
+		Deflater deflater = new Deflater(level);
+
+		try {
+			int top = layout.getTopPadding();
+			int multiple = layout.getModuleSize();
+			int bottom = top + layout.getInputHeight() * multiple;
+
+			for (int y = 0; y < top; y++)
+				deflate(deflater, white, channel, out, length);
+
+			for (int y = 0; y < layout.getInputHeight(); y++) {
+				CodeRasterizer.packRow(input, y, layout, row, 1);
+
+				for (int i = 0; i < multiple; i++)
+					deflate(deflater, row, channel, out, length);
+			}
+
+			for (int y = bottom; y < layout.getHeight(); y++)
+				deflate(deflater, white, channel, out, length);
+
+			deflater.finish();
+			while (!deflater.finished())
+				drain(deflater, channel, out, length);
+
+			if (length[0] > 0)
+				writeChunk(channel, "IDAT", out, length[0]);
+		} finally {
+			deflater.end();
+		}
+
+		writeChunk(channel, "IEND", out, 0);
+	}
+
+	private static void deflate(Deflater deflater, byte[] row,
+			WritableByteChannel channel, byte[] out, int[] length)
+			throws IOException {
+		deflater.setInput(row);
+
+		while (!deflater.needsInput())
+			drain(deflater, channel, out, length);
+	}
+
+	/**
+	 * Fetches compressed data into the chunk buffer and writes an IDAT chunk
+	 * once the buffer is full.
+	 */
+	private static void drain(Deflater deflater, WritableByteChannel channel,
+			byte[] out, int[] length) throws IOException {
+		length[0] += deflater.deflate(out, length[0], out.length - length[0]);
+
+		if (length[0] == out.length) {
+			writeChunk(channel, "IDAT", out, length[0]);
+			length[0] = 0;
+		}
+	}
+
+	private static void writeChunk(WritableByteChannel channel, String type,
+			byte[] data, int length) throws IOException {
+		byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+		CRC32 crc = new CRC32();
+		crc.update(name);
+		crc.update(data, 0, length);
+
+		ByteBuffer head = ByteBuffer.allocate(8);
+		head.putInt(length).put(name).flip();
+		ByteBuffer tail = ByteBuffer.allocate(4);
+		tail.putInt((int) crc.getValue()).flip();
+
+		writeFully(channel, head);
+		writeFully(channel, ByteBuffer.wrap(data, 0, length));
+		writeFully(channel, tail);
+	}
+
+	private static void writeFully(WritableByteChannel channel, ByteBuffer buf)
+			throws IOException {
+		while (buf.hasRemaining())
+			channel.write(buf);
+	}
+}
@@ -0,0 +1,55 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.output;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+
+/**
+ * This class writes QR codes as raw packed bits for printers. The file starts
+ * with the magic bytes 'QRB1' followed by the width and height in modules
+ * (including the quiet zone) as 32 bit big-endian integers. Then follows one
+ * bit per module, row by row, with the most significant bit first and 1 ==
+ * black. Every row is padded to whole bytes. The requested image size is
+ * ignored since printers scale modules on their own.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+public class RawCodeWriter implements CodeWriter {
+	public static final byte[] MAGIC = { 'Q', 'R', 'B', '1' };
+
+	@Override
+	public String getExtension() {
+		return "qrb";
+	}
+
+	@Override
+	public void write(ByteMatrix input, int size, int quietZone,
+			WritableByteChannel channel) throws IOException {
+		int width = input.getWidth() + 2 * quietZone;
+		int height = input.getHeight() + 2 * quietZone;
+		int stride = (width + 7) / 8;
+		ByteBuffer buf = ByteBuffer.allocate(12 + stride * height);
+
+		buf.put(MAGIC).putInt(width).putInt(height);
+
+		for (int y = 0; y < input.getHeight(); y++) {
+			byte[] modules = input.getArray()[y];
+			int row = 12 + (y + quietZone) * stride;
+
+			for (int x = 0; x < input.getWidth(); x++) {
+				if (modules[x] == 1) {
+					int bit = x + quietZone;
+					int index = row + (bit >> 3);
+					buf.put(index, (byte) (buf.get(index) | (0x80 >>> (bit & 7))));
+				}
+			}
+		}
+
+		buf.rewind();
+		while (buf.hasRemaining())
+			channel.write(buf);
+	}
+}
@@ -0,0 +1,68 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.output;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+
+/**
+ * This class writes QR codes as SVG vector graphics. Every run of black
+ * modules in a row becomes one rectangle of a single path, using the pixel
+ * coordinates of the {@link CodeLayout}.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+public class SvgCodeWriter implements CodeWriter {
+	@Override
+	public String getExtension() {
+		return "svg";
+	}
+
+	@Override
+	public void write(ByteMatrix input, int size, int quietZone,
+			WritableByteChannel channel) throws IOException {
+		CodeLayout layout = new CodeLayout(input, size, size, quietZone);
+		int width = layout.getWidth();
+		int height = layout.getHeight();
+		int multiple = layout.getModuleSize();
+		// Closing the writer would close the channel of the caller.
+		Writer writer = new BufferedWriter(Channels.newWriter(channel,
+				StandardCharsets.UTF_8.newEncoder(), -1));
+
+		writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		writer.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\""
+				+ width + "\" height=\"" + height + "\" viewBox=\"0 0 "
+				+ width + " " + height + "\" shape-rendering=\"crispEdges\">\n");
+		writer.write("<rect width=\"" + width + "\" height=\"" + height
+				+ "\" fill=\"#fff\"/>\n");
+		writer.write("<path fill=\"#000\" d=\"");
+
+		for (int y = 0; y < layout.getInputHeight(); y++) {
+			byte[] modules = input.getArray()[y];
+			int top = layout.getTopPadding() + y * multiple;
+
+			for (int x = 0; x < layout.getInputWidth(); x++) {
+				if (modules[x] != 1)
+					continue;
+
+				int end = x + 1;
+				while (end < layout.getInputWidth() && modules[end] == 1)
+					end++;
+
+				int left = layout.getLeftPadding() + x * multiple;
+				int run = (end - x) * multiple;
+				writer.write("M" + left + " " + top + "h" + run + "v"
+						+ multiple + "h-" + run + "z");
+				x = end;
+			}
+		}
+
+		writer.write("\"/>\n</svg>\n");
+		writer.flush();
+	}
+}
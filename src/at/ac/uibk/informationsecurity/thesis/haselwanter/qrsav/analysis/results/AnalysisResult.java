@@ -0,0 +1,167 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.results;
+
+import java.util.Arrays;
+
+/**
+ * The result of a single analysis test at one error correction level. All
+ * sizes are given in bits, all timings in nanoseconds.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+public class AnalysisResult {
+	/**
+	 * The names of the columns in the order of {@link #getValues()}.
+	 */
+	public static final String[] COLUMNS;
+	/**
+	 * The types of the columns, i.e. String, Integer or Long.
+	 */
+	public static final Class<?>[] TYPES;
+
+	private final String algorithmForKeys;
+	private final String algorithmForSign;
+	private final String provider;
+	private final String file;
+	private final String framing;
+	private final int keySize;
+	private final int privateKeySize;
+	private final int publicKeySize;
+	private final int messageBits;
+	private final int signatureBits;
+	private final int dataBits;
+	private final String ecLevel;
+	private final int version;
+	private final int dimension;
+	private final long[] timings;
+
+	static {
+		String[] fields = { "algorithmForKeys", "algorithmForSign",
+				"provider", "file", "framing", "keySize", "privateKeySize",
+				"publicKeySize", "messageBits", "signatureBits", "dataBits",
+				"ecLevel", "version", "dimension" };
+		Phase[] phases = Phase.values();
+
+		COLUMNS = Arrays.copyOf(fields, fields.length + phases.length);
+		TYPES = new Class<?>[COLUMNS.length];
+		for (int i = 0; i < fields.length; i++)
+			TYPES[i] = i < 5 || i == 11 ? String.class : Integer.class;
+		for (Phase phase : phases) {
+			COLUMNS[fields.length + phase.ordinal()] = phase.name()
+					.toLowerCase() + "Nanos";
+			TYPES[fields.length + phase.ordinal()] = Long.class;
+		}
+	}
+
+	public AnalysisResult(String algorithmForKeys, String algorithmForSign,
+			String provider, String file, String framing, int keySize,
+			int privateKeySize, int publicKeySize, int messageBits,
+			int signatureBits, int dataBits, String ecLevel, int version,
+			int dimension, long[] timings) {
+		if (timings.length != Phase.values().length)
+			throw new IllegalArgumentException("Expected "
+					+ Phase.values().length + " timings.");
+
+		this.algorithmForKeys = algorithmForKeys;
+		this.algorithmForSign = algorithmForSign;
+		this.provider = provider;
+		this.file = file;
+		this.framing = framing;
+		this.keySize = keySize;
+		this.privateKeySize = privateKeySize;
+		this.publicKeySize = publicKeySize;
+		this.messageBits = messageBits;
+		this.signatureBits = signatureBits;
+		this.dataBits = dataBits;
+		this.ecLevel = ecLevel;
+		this.version = version;
+		this.dimension = dimension;
+		this.timings = timings.clone();
+	}
+
+	public String getAlgorithmForKeys() {
+		return algorithmForKeys;
+	}
+
+	public String getAlgorithmForSign() {
+		return algorithmForSign;
+	}
+
+	public String getProvider() {
+		return provider;
+	}
+
+	public String getFile() {
+		return file;
+	}
+
+	public String getFraming() {
+		return framing;
+	}
+
+	public int getKeySize() {
+		return keySize;
+	}
+
+	public int getPrivateKeySize() {
+		return privateKeySize;
+	}
+
+	public int getPublicKeySize() {
+		return publicKeySize;
+	}
+
+	public int getMessageBits() {
+		return messageBits;
+	}
+
+	public int getSignatureBits() {
+		return signatureBits;
+	}
+
+	public int getDataBits() {
+		return dataBits;
+	}
+
+	public String getECLevel() {
+		return ecLevel;
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	public int getDimension() {
+		return dimension;
+	}
+
+	/**
+	 * Returns the duration of a phase.
+	 * 
+	 * @param phase
+	 *            the phase.
+	 * @return the duration in nanoseconds.
+	 */
+	public long getTiming(Phase phase) {
+		return timings[phase.ordinal()];
+	}
+
+	/**
+	 * Returns the values of all columns in the order of {@link #COLUMNS}.
+	 * Strings stay strings, all other values are Integers or Longs.
+	 * 
+	 * @return the values.
+	 */
+	public Object[] getValues() {
+		Object[] values = { algorithmForKeys, algorithmForSign, provider,
+				file, framing, keySize, privateKeySize, publicKeySize,
+				messageBits, signatureBits, dataBits, ecLevel, version,
+				dimension };
+		values = Arrays.copyOf(values, COLUMNS.length);
+
+		for (int i = 0; i < timings.length; i++)
+			values[values.length - timings.length + i] = timings[i];
+
+		return values;
+	}
+}
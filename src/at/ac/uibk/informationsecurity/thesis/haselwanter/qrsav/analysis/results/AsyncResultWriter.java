@@ -0,0 +1,126 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.results;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * This class decouples the tests from the output of their records. Records
+ * are put into an unbounded queue, so writing never blocks the calling
+ * thread, and a background thread passes them in batches to the underlying
+ * {@link ResultWriter}. The writer is flushed whenever the queue runs empty.
+ * Failures of the underlying writer are rethrown by the next call of
+ * {@link #write(AnalysisResult)} or by {@link #close()}.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+public class AsyncResultWriter implements ResultWriter {
+	private static final Object FLUSH = new Object();
+	private static final Object END = new Object();
+
+	private final ResultWriter writer;
+	private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+	private final Thread thread;
+	private volatile IOException failure;
+	private volatile boolean closed = false;
+
+	public AsyncResultWriter(ResultWriter writer) {
+		this.writer = writer;
+
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				drain();
+			}
+		}, "result-writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void drain() {
+		List<Object> batch = new ArrayList<>();
+
+		try {
+			while (true) {
+				batch.add(queue.take());
+				queue.drainTo(batch);
+
+				for (Object item : batch) {
+					if (item == END)
+						return;
+					else if (item == FLUSH)
+						writer.flush();
+					else if (failure == null)
+						writer.write((AnalysisResult) item);
+				}
+
+				batch.clear();
+				if (queue.isEmpty())
+					writer.flush();
+			}
+		} catch (IOException e) {
+			failure = e;
+			// Keep taking records so the queue does not grow any further.
+			drainAfterFailure();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void drainAfterFailure() {
+		try {
+			while (queue.take() != END)
+				;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void write(AnalysisResult result) throws IOException {
+		if (closed)
+			throw new IOException("Result writer is closed.");
+		if (failure != null)
+			throw failure;
+
+		queue.add(result);
+	}
+
+	/**
+	 * Requests a flush of the underlying writer after all records written so
+	 * far. Does not wait for the flush to happen.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (failure != null)
+			throw failure;
+
+		queue.add(FLUSH);
+	}
+
+	/**
+	 * Writes all queued records and closes the underlying writer.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+
+		queue.add(END);
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while writing results.", e);
+		} finally {
+			writer.close();
+		}
+
+		if (failure != null)
+			throw failure;
+	}
+}
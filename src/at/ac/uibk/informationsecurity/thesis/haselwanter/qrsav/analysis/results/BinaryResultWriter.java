@@ -0,0 +1,125 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.results;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class writes the records to a compact binary file stored column by
+ * column. The file starts with the magic bytes 'QRR1' and the number of
+ * columns, followed by the name (modified UTF-8) and type ('S' for strings,
+ * 'I' for 32 bit and 'L' for 64 bit integers) of each column. Then follow
+ * blocks of up to {@link #BLOCK_SIZE} records: the number of records and the
+ * values of each column. String columns store a dictionary of their distinct
+ * values and a 16 bit index per record, integer columns store their
+ * non-negative values as unsigned LEB128 varints. A block of 0 records ends
+ * the file. All other numbers are big-endian. Only complete blocks are
+ * written before the writer is closed.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+public class BinaryResultWriter implements ResultWriter {
+	public static final byte[] MAGIC = { 'Q', 'R', 'R', '1' };
+	public static final int BLOCK_SIZE = 1024;
+
+	private final DataOutputStream out;
+	private final List<Object[]> block = new ArrayList<>(BLOCK_SIZE);
+
+	public BinaryResultWriter(OutputStream out) throws IOException {
+		this.out = new DataOutputStream(new BufferedOutputStream(out));
+
+		this.out.write(MAGIC);
+		this.out.writeShort(AnalysisResult.COLUMNS.length);
+		for (int i = 0; i < AnalysisResult.COLUMNS.length; i++) {
+			this.out.writeUTF(AnalysisResult.COLUMNS[i]);
+			this.out.writeByte(AnalysisResult.TYPES[i] == String.class ? 'S'
+					: AnalysisResult.TYPES[i] == Integer.class ? 'I' : 'L');
+		}
+	}
+
+	@Override
+	public void write(AnalysisResult result) throws IOException {
+		block.add(result.getValues());
+
+		if (block.size() == BLOCK_SIZE)
+			writeBlock();
+	}
+
+	private void writeBlock() throws IOException {
+		if (block.isEmpty())
+			return;
+
+		out.writeInt(block.size());
+
+		for (int column = 0; column < AnalysisResult.COLUMNS.length; column++) {
+			Class<?> type = AnalysisResult.TYPES[column];
+
+			if (type == String.class)
+				writeStrings(column);
+			else
+				for (Object[] values : block)
+					writeVarint(((Number) values[column]).longValue());
+		}
+
+		block.clear();
+	}
+
+	private void writeVarint(long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+
+		out.writeByte((int) value);
+	}
+
+	private void writeStrings(int column) throws IOException {
+		Map<String, Integer> dictionary = new HashMap<>();
+		List<String> entries = new ArrayList<>();
+		int[] indices = new int[block.size()];
+
+		for (int i = 0; i < indices.length; i++) {
+			String value = (String) block.get(i)[column];
+			Integer index = dictionary.get(value);
+
+			if (index == null) {
+				index = entries.size();
+				dictionary.put(value, index);
+				entries.add(value);
+			}
+
+			indices[i] = index;
+		}
+
+		out.writeShort(entries.size());
+		for (String entry : entries)
+			out.writeUTF(entry);
+		for (int index : indices)
+			out.writeShort(index);
+	}
+
+	/**
+	 * Writes the complete blocks to the underlying stream. Pending records
+	 * stay buffered, so blocks keep their size.
+	 */
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			writeBlock();
+			out.writeInt(0);
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.results;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class writes the records as comma separated values with a header line
+ * of the column names. Values containing commas, quotes or line breaks are
+ * quoted according to RFC 4180.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+public class CsvResultWriter implements ResultWriter {
+	private final Writer writer;
+
+	public CsvResultWriter(OutputStream out) throws IOException {
+		writer = new BufferedWriter(new OutputStreamWriter(out,
+				StandardCharsets.UTF_8));
+		writeLine(AnalysisResult.COLUMNS);
+	}
+
+	@Override
+	public void write(AnalysisResult result) throws IOException {
+		writeLine(result.getValues());
+	}
+
+	private void writeLine(Object[] values) throws IOException {
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0)
+				writer.write(',');
+			writer.write(escape(String.valueOf(values[i])));
+		}
+
+		writer.write("\r\n");
+	}
+
+	private static String escape(String value) {
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0
+				&& value.indexOf('\n') < 0 && value.indexOf('\r') < 0)
+			return value;
+
+		return '"' + value.replace("\"", "\"\"") + '"';
+	}
+
+	@Override
+	public void flush() throws IOException {
+		writer.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+}
@@ -0,0 +1,70 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.results;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class writes the records as JSON Lines, i.e. one JSON object per line
+ * with the column names as keys.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+public class JsonResultWriter implements ResultWriter {
+	private final Writer writer;
+
+	public JsonResultWriter(OutputStream out) {
+		writer = new BufferedWriter(new OutputStreamWriter(out,
+				StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public void write(AnalysisResult result) throws IOException {
+		Object[] values = result.getValues();
+		StringBuilder line = new StringBuilder(256).append('{');
+
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0)
+				line.append(',');
+			quote(line, AnalysisResult.COLUMNS[i]).append(':');
+
+			if (values[i] instanceof String)
+				quote(line, (String) values[i]);
+			else
+				line.append(values[i]);
+		}
+
+		writer.write(line.append("}\n").toString());
+	}
+
+	private static StringBuilder quote(StringBuilder line, String value) {
+		line.append('"');
+
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+
+			if (c == '"' || c == '\\')
+				line.append('\\').append(c);
+			else if (c < 0x20)
+				line.append(String.format("\\u%04x", (int) c));
+			else
+				line.append(c);
+		}
+
+		return line.append('"');
+	}
+
+	@Override
+	public void flush() throws IOException {
+		writer.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+}
@@ -0,0 +1,99 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.results;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * This class records the durations of the {@link Phase}s into HdrHistograms,
+ * one per phase and cell of the test grid, i.e. per algorithm, key size and
+ * payload. Recording is wait-free and can be done concurrently by several
+ * tests. The histograms auto-resize and keep two significant digits, which
+ * bounds the error of every percentile to 1%.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+public class LatencyRecorder {
+	public static final int SIGNIFICANT_DIGITS = 2;
+
+	private final ConcurrentMap<String, Histogram[]> cells = new ConcurrentSkipListMap<>();
+
+	/**
+	 * Returns the histograms of a cell, one per phase, creating them on first
+	 * use. Tests should look them up once and record into them directly.
+	 * 
+	 * @param algorithm
+	 *            the signature algorithm.
+	 * @param keySize
+	 *            the key size.
+	 * @param payload
+	 *            the name of the payload, e.g. the test file.
+	 * @return the histograms indexed by {@link Phase#ordinal()}.
+	 */
+	public Histogram[] getCell(String algorithm, int keySize, String payload) {
+		String name = String.format("%s-%04d %s", algorithm, keySize, payload);
+		Histogram[] cell = cells.get(name);
+
+		if (cell == null) {
+			cell = new Histogram[Phase.values().length];
+			for (int i = 0; i < cell.length; i++)
+				cell[i] = new ConcurrentHistogram(SIGNIFICANT_DIGITS);
+
+			Histogram[] existing = cells.putIfAbsent(name, cell);
+			if (existing != null)
+				cell = existing;
+		}
+
+		return cell;
+	}
+
+	/**
+	 * Records the duration of a phase.
+	 * 
+	 * @param cell
+	 *            the histograms of the cell as returned by
+	 *            {@link #getCell(String, int, String)}.
+	 * @param phase
+	 *            the phase.
+	 * @param nanos
+	 *            the duration in nanoseconds.
+	 */
+	public static void record(Histogram[] cell, Phase phase, long nanos) {
+		cell[phase.ordinal()].recordValue(Math.max(0, nanos));
+	}
+
+	/**
+	 * Prints the number of samples, the 50th, 99th and 99.9th percentile and
+	 * the maximum of every phase and cell in microseconds.
+	 * 
+	 * @param out
+	 *            the stream to print to.
+	 */
+	public void report(PrintStream out) {
+		out.println(String.format("%-36s %-6s %7s %10s %10s %10s %10s",
+				"Cell", "Phase", "Count", "p50 [us]", "p99 [us]", "p999 [us]",
+				"max [us]"));
+
+		for (Map.Entry<String, Histogram[]> entry : cells.entrySet()) {
+			for (Phase phase : Phase.values()) {
+				Histogram histogram = entry.getValue()[phase.ordinal()];
+
+				if (histogram.getTotalCount() == 0)
+					continue;
+
+				out.println(String.format(
+						"%-36s %-6s %7d %10.1f %10.1f %10.1f %10.1f",
+						entry.getKey(), phase, histogram.getTotalCount(),
+						histogram.getValueAtPercentile(50) / 1e3,
+						histogram.getValueAtPercentile(99) / 1e3,
+						histogram.getValueAtPercentile(99.9) / 1e3,
+						histogram.getMaxValue() / 1e3));
+			}
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.results;
+
+/**
+ * The phases of an analysis test whose durations are recorded in every
+ * {@link AnalysisResult}.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+public enum Phase {
+	/**
+	 * Reading the test file.
+	 */
+	READ,
+	/**
+	 * Loading or generating the key pair.
+	 */
+	KEYS,
+	/**
+	 * Signing the message.
+	 */
+	SIGN,
+	/**
+	 * Verifying the signature of the message.
+	 */
+	VERIFY,
+	/**
+	 * Saving signature and public key, once per test.
+	 */
+	SAVE,
+	/**
+	 * Encoding the payload into a QR code.
+	 */
+	ENCODE,
+	/**
+	 * Saving the QR code, once per error correction level.
+	 */
+	WRITE
+}
@@ -0,0 +1,30 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.results;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A result writer stores {@link AnalysisResult} records in a specific file
+ * format. Implementations are not thread-safe unless stated otherwise, wrap
+ * them in an {@link AsyncResultWriter} to share them between tests.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+public interface ResultWriter extends Closeable {
+	/**
+	 * Writes a single record.
+	 * 
+	 * @param result
+	 *            the record.
+	 * @throws IOException
+	 */
+	void write(AnalysisResult result) throws IOException;
+
+	/**
+	 * Writes all buffered records to the underlying file.
+	 * 
+	 * @throws IOException
+	 */
+	void flush() throws IOException;
+}
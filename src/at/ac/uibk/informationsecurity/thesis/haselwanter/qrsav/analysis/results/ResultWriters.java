@@ -0,0 +1,75 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.results;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * This class creates the {@link ResultWriter} of a format by its name.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+public class ResultWriters {
+	private ResultWriters() {
+
+	}
+
+	/**
+	 * Returns the file extension of a format.
+	 * 
+	 * @param format
+	 *            'csv' for comma separated values, 'jsonl' for JSON Lines or
+	 *            'bin' for the binary columnar format.
+	 * @return the file extension.
+	 */
+	public static String getExtension(String format) {
+		switch (format.toLowerCase()) {
+		case "csv":
+			return "csv";
+		case "json":
+		case "jsonl":
+			return "jsonl";
+		case "bin":
+			return "qrr";
+
+		default:
+			throw new IllegalArgumentException("Unknown result format '"
+					+ format + "'.");
+		}
+	}
+
+	/**
+	 * Opens a result writer of a specific format which writes to a file. The
+	 * returned writer is asynchronous and can be shared between threads.
+	 * 
+	 * @param format
+	 *            'csv' for comma separated values, 'jsonl' for JSON Lines or
+	 *            'bin' for the binary columnar format.
+	 * @param file
+	 *            the path of the file, which is replaced if it exists.
+	 * @return the result writer.
+	 * @throws IOException
+	 */
+	public static ResultWriter open(String format, String file)
+			throws IOException {
+		String extension = getExtension(format);
+		OutputStream out = Files.newOutputStream(Paths.get(file));
+
+		try {
+			switch (extension) {
+			case "csv":
+				return new AsyncResultWriter(new CsvResultWriter(out));
+			case "jsonl":
+				return new AsyncResultWriter(new JsonResultWriter(out));
+
+			default:
+				return new AsyncResultWriter(new BinaryResultWriter(out));
+			}
+		} catch (IOException e) {
+			out.close();
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.analysis.results;
+
+/**
+ * This class summarizes repeated measurements of the same quantity by their
+ * mean, sample standard deviation and the confidence interval of the mean
+ * based on Student's t-distribution.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+public class Statistics {
+	private long count;
+	private double mean;
+	// Sum of squared differences from the mean (Welford's algorithm).
+	private double squares;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+
+	public synchronized void add(double value) {
+		count++;
+		double delta = value - mean;
+		mean += delta / count;
+		squares += delta * (value - mean);
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+	}
+
+	public synchronized long getCount() {
+		return count;
+	}
+
+	public synchronized double getMean() {
+		return count == 0 ? Double.NaN : mean;
+	}
+
+	public synchronized double getMin() {
+		return min;
+	}
+
+	public synchronized double getMax() {
+		return max;
+	}
+
+	/**
+	 * Returns the sample standard deviation.
+	 * 
+	 * @return the standard deviation, or NaN for less than two values.
+	 */
+	public synchronized double getStandardDeviation() {
+		return count < 2 ? Double.NaN : Math.sqrt(squares / (count - 1));
+	}
+
+	/**
+	 * Returns the two-sided confidence interval of the mean.
+	 * 
+	 * @param confidence
+	 *            the confidence level, e.g. 0.99.
+	 * @return the lower and upper bound, or NaN for less than two values.
+	 */
+	public synchronized double[] getConfidenceInterval(double confidence) {
+		if (count < 2)
+			return new double[] { Double.NaN, Double.NaN };
+
+		double error = tQuantile(1 - (1 - confidence) / 2, count - 1)
+				* getStandardDeviation() / Math.sqrt(count);
+
+		return new double[] { mean - error, mean + error };
+	}
+
+	/**
+	 * Returns the quantile of Student's t-distribution, exact for one and two
+	 * degrees of freedom and by the Cornish-Fisher expansion otherwise. At the
+	 * 99% level the error is below 1% for three and below 0.01% for ten and
+	 * more degrees of freedom.
+	 */
+	static double tQuantile(double p, long df) {
+		if (df == 1)
+			return Math.tan(Math.PI * (p - 0.5));
+		if (df == 2)
+			return (2 * p - 1) / Math.sqrt(2 * p * (1 - p));
+
+		double z = normalQuantile(p);
+		double z2 = z * z;
+		double n = df;
+
+		return z + z * (z2 + 1) / (4 * n) + z * ((5 * z2 + 16) * z2 + 3)
+				/ (96 * n * n) + z * (((3 * z2 + 19) * z2 + 17) * z2 - 15)
+				/ (384 * n * n * n) + z
+				* ((((79 * z2 + 776) * z2 + 1482) * z2 - 1920) * z2 - 945)
+				/ (92160 * n * n * n * n);
+	}
+
+	/**
+	 * Returns the quantile of the standard normal distribution using Acklam's
+	 * rational approximation (relative error below 1.2e-9).
+	 */
+	static double normalQuantile(double p) {
+		double[] a = { -3.969683028665376e+01, 2.209460984245205e+02,
+				-2.759285104469687e+02, 1.383577518672690e+02,
+				-3.066479806614716e+01, 2.506628277459239e+00 };
+		double[] b = { -5.447609879822406e+01, 1.615858368580409e+02,
+				-1.556989798598866e+02, 6.680131188771972e+01,
+				-1.328068155288572e+01 };
+		double[] c = { -7.784894002430293e-03, -3.223964580411365e-01,
+				-2.400758277161838e+00, -2.549732539343734e+00,
+				4.374664141464968e+00, 2.938163982698783e+00 };
+		double[] d = { 7.784695709041462e-03, 3.224671290700398e-01,
+				2.445134137142996e+00, 3.754408661907416e+00 };
+
+		if (p < 0.02425) {
+			double q = Math.sqrt(-2 * Math.log(p));
+			return (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4])
+					* q + c[5])
+					/ ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+		} else if (p > 1 - 0.02425) {
+			return -normalQuantile(1 - p);
+		}
+
+		double q = p - 0.5;
+		double r = q * q;
+		return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5])
+				* q
+				/ (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+	}
+
+	@Override
+	public synchronized String toString() {
+		double[] interval = getConfidenceInterval(0.99);
+
+		return String.format(
+				"n = %d, mean = %.3f, sd = %.3f, 99%% CI = [%.3f, %.3f]",
+				count, getMean(), getStandardDeviation(), interval[0],
+				interval[1]);
+	}
+}
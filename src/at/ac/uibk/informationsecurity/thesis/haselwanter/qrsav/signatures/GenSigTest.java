@@ -14,6 +14,7 @@ import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.except
 import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.handler.FileHandler;
 import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.handler.SignatureHandler;
 import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.KeyPairFactory;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpec;
 import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpecHolder;
 
 /**
@@ -25,11 +26,10 @@ import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.
  */
 public class GenSigTest {
 	private static SignatureSpecHolder holder = SignatureSpecHolder
-			.getInstance();
+			.of(new SignatureSpec("DSA", "SHA1withDSA", "SUN"));
 	private static FileHandler fh = null;
 
 	public static void main(String[] args) {
-		holder.setSpecs("DSA", "SHA1withDSA", "SUN");
 		fh = FileHandler.getInstance("./", holder);
 
 		try {
@@ -50,7 +50,7 @@ public class GenSigTest {
 			try {
 				String signFile = "ste-sign.sig";
 				String publicKeyFile = "ste-"
-						+ holder.getAlgorithmForKeys().toLowerCase() + ".pub";
+						+ holder.getSpec().getKeyName().toLowerCase() + ".pub";
 				verifySignature(signFile, publicKeyFile, "hello.txt");
 
 				System.out.println("Verification done.");
@@ -0,0 +1,335 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures;
+
+import java.nio.ByteBuffer;
+import java.security.SignatureException;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureConverter;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.TreeHash;
+
+/**
+ * This class represents the binary framing of a message and its digital
+ * signature stored in a QR code. Compared to the '[MESSAGE]
+ * {@link SignatureEntity#SIG_START_TAG}[SIGNATURE]
+ * {@link SignatureEntity#SIG_END_TAG}' text format it needs no tags and no
+ * character encoding, so every byte takes exactly one byte in the QR code's
+ * byte mode. A frame has the following format:
+ * 
+ * <pre>
+ * [HEADER: 1 byte][MESSAGE LENGTH: 1-5 bytes][MESSAGE][SIGNATURE]
+ * </pre>
+ * 
+ * The upper four bits of the header hold the {@link #VERSION}, the lower four
+ * bits the flags, i.e. {@link #FLAG_RAW_SIGNATURE} and {@link #FLAG_TREE_HASH}.
+ * The message length is an unsigned variable-length integer with seven bits
+ * per byte, least significant group first. The signature takes the rest of
+ * the frame.
+ * 
+ * Use {@link #parse(ByteBuffer)} to get views of the message and signature
+ * without copying them.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+public class PayloadFrame {
+	public static final int VERSION = 1;
+	/**
+	 * The signature is stored as raw 'r || s' instead of DER, see
+	 * {@link SignatureConverter}.
+	 */
+	public static final int FLAG_RAW_SIGNATURE = 0x01;
+	/**
+	 * The signature was made over the {@link TreeHash} of the message with
+	 * the 'NONEwith*' primitive of the signature algorithm, see
+	 * {@code SignatureHandler#signTree(ByteBuffer, java.security.PrivateKey)}.
+	 */
+	public static final int FLAG_TREE_HASH = 0x02;
+	private final int flags;
+	private final ByteBuffer message;
+	private final ByteBuffer signature;
+
+	private PayloadFrame(int flags, ByteBuffer message, ByteBuffer signature) {
+		this.flags = flags;
+		this.message = message;
+		this.signature = signature;
+	}
+
+	/**
+	 * Encodes the message and its signature into a frame.
+	 * 
+	 * @param msg
+	 *            the message.
+	 * @param sign
+	 *            the DER encoded DSA or ECDSA signature, or any other
+	 *            signature.
+	 * @param componentLength
+	 *            the byte length of each integer if the signature shall be
+	 *            stored in the compact raw encoding (see
+	 *            {@link SignatureConverter#getComponentLength(java.security.Key)}
+	 *            ), or a value less than 1 to store the signature as is.
+	 * @return the frame.
+	 * @throws SignatureException
+	 *             thrown if the signature cannot be converted to the raw
+	 *             encoding.
+	 */
+	public static byte[] encode(byte[] msg, SignatureEntity sign,
+			int componentLength) throws SignatureException {
+		return encode(msg, sign, componentLength, false);
+	}
+
+	/**
+	 * Encodes the message and its signature into a frame, optionally marking
+	 * the signature as made over the tree hash of the message.
+	 * 
+	 * @param msg
+	 *            the message.
+	 * @param sign
+	 *            the signature.
+	 * @param componentLength
+	 *            the byte length of each integer if the signature shall be
+	 *            stored in the compact raw encoding, or a value less than 1
+	 *            to store the signature as is.
+	 * @param treeHash
+	 *            true if the signature was made over the tree hash of the
+	 *            message, see {@link #FLAG_TREE_HASH}.
+	 * @return the frame.
+	 * @throws SignatureException
+	 *             thrown if the signature cannot be converted to the raw
+	 *             encoding.
+	 */
+	public static byte[] encode(byte[] msg, SignatureEntity sign,
+			int componentLength, boolean treeHash) throws SignatureException {
+		byte[] frame = new byte[getFrameSize(msg.length, sign.size(),
+				componentLength)];
+
+		encode(ByteBuffer.wrap(msg), sign.asByteBuffer(), componentLength,
+				treeHash, ByteBuffer.wrap(frame));
+
+		return frame;
+	}
+
+	/**
+	 * Encodes the message and its signature into a caller-provided buffer,
+	 * e.g. one reused for every code. The message and signature are copied
+	 * exactly once, the positions of their buffers are not changed.
+	 * 
+	 * @param msg
+	 *            the message between position and limit.
+	 * @param sign
+	 *            the signature between position and limit.
+	 * @param componentLength
+	 *            the byte length of each integer if the signature shall be
+	 *            stored in the compact raw encoding, or a value less than 1
+	 *            to store the signature as is.
+	 * @param dst
+	 *            the buffer to put the frame into, starting at its position.
+	 * @return the size of the frame.
+	 * @throws SignatureException
+	 *             thrown if the signature cannot be converted to the raw
+	 *             encoding or the frame does not fit into the buffer.
+	 */
+	public static int encode(ByteBuffer msg, ByteBuffer sign,
+			int componentLength, ByteBuffer dst) throws SignatureException {
+		return encode(msg, sign, componentLength, false, dst);
+	}
+
+	/**
+	 * Encodes the message and its signature into a caller-provided buffer like
+	 * {@link #encode(ByteBuffer, ByteBuffer, int, ByteBuffer)}, optionally
+	 * marking the signature as made over the tree hash of the message.
+	 * 
+	 * @param msg
+	 *            the message between position and limit.
+	 * @param sign
+	 *            the signature between position and limit.
+	 * @param componentLength
+	 *            the byte length of each integer if the signature shall be
+	 *            stored in the compact raw encoding, or a value less than 1
+	 *            to store the signature as is.
+	 * @param treeHash
+	 *            true if the signature was made over the tree hash of the
+	 *            message, see {@link #FLAG_TREE_HASH}.
+	 * @param dst
+	 *            the buffer to put the frame into, starting at its position.
+	 * @return the size of the frame.
+	 * @throws SignatureException
+	 *             thrown if the signature cannot be converted to the raw
+	 *             encoding or the frame does not fit into the buffer.
+	 */
+	public static int encode(ByteBuffer msg, ByteBuffer sign,
+			int componentLength, boolean treeHash, ByteBuffer dst)
+			throws SignatureException {
+		int length = msg.remaining();
+		int size = getFrameSize(length, sign.remaining(), componentLength);
+
+		if (size > dst.remaining())
+			throw new SignatureException("Payload frame does not fit into "
+					+ dst.remaining() + " bytes.");
+
+		int flags = (componentLength > 0 ? FLAG_RAW_SIGNATURE : 0)
+				| (treeHash ? FLAG_TREE_HASH : 0);
+		dst.put((byte) (VERSION << 4 | flags));
+		putLength(dst, length);
+		dst.put(msg.duplicate());
+
+		if (componentLength > 0)
+			SignatureConverter.toRaw(sign, componentLength, dst);
+		else
+			dst.put(sign.duplicate());
+
+		return size;
+	}
+
+	/**
+	 * Returns the size of a frame, e.g. to allocate the buffer for
+	 * {@link #encode(ByteBuffer, ByteBuffer, int, ByteBuffer)}.
+	 * 
+	 * @param messageLength
+	 *            the length of the message.
+	 * @param signatureLength
+	 *            the length of the signature as produced by the Signature
+	 *            class.
+	 * @param componentLength
+	 *            the byte length of each integer of a raw signature, or a
+	 *            value less than 1 for signatures stored as is.
+	 * @return the size of the frame in bytes.
+	 */
+	public static int getFrameSize(int messageLength, int signatureLength,
+			int componentLength) {
+		return 1 + getLengthSize(messageLength) + messageLength
+				+ (componentLength > 0 ? 2 * componentLength : signatureLength);
+	}
+
+	/**
+	 * Parses a frame without copying the message or the signature. The
+	 * position of the buffer is not changed.
+	 * 
+	 * @param frame
+	 *            the buffer containing the frame between its position and
+	 *            limit.
+	 * @return the parsed frame.
+	 * @throws SignatureException
+	 *             thrown if the buffer does not contain a valid frame.
+	 */
+	public static PayloadFrame parse(ByteBuffer frame)
+			throws SignatureException {
+		ByteBuffer buf = frame.duplicate();
+
+		if (!buf.hasRemaining())
+			throw new SignatureException("Empty payload frame.");
+
+		int header = buf.get() & 0xFF;
+		if (header >>> 4 != VERSION)
+			throw new SignatureException("Unsupported payload frame version '"
+					+ (header >>> 4) + "'.");
+
+		int length = getLength(buf);
+		if (length > buf.remaining())
+			throw new SignatureException("Truncated payload frame.");
+
+		ByteBuffer message = buf.slice();
+		message.limit(length);
+		buf.position(buf.position() + length);
+
+		return new PayloadFrame(header & 0x0F, message.asReadOnlyBuffer(), buf
+				.slice().asReadOnlyBuffer());
+	}
+
+	/**
+	 * Checks if the payload starts like a frame of the current version.
+	 * Payloads in the text format start with the message instead.
+	 * 
+	 * @param payload
+	 *            the payload.
+	 * @return true if the payload might be a frame, false otherwise.
+	 */
+	public static boolean isFrame(ByteBuffer payload) {
+		return payload.hasRemaining()
+				&& (payload.get(payload.position()) & 0xFF) >>> 4 == VERSION;
+	}
+
+	public int getFlags() {
+		return flags;
+	}
+
+	public boolean isRawSignature() {
+		return (flags & FLAG_RAW_SIGNATURE) != 0;
+	}
+
+	public boolean isTreeHash() {
+		return (flags & FLAG_TREE_HASH) != 0;
+	}
+
+	/**
+	 * Returns a read-only view of the message.
+	 * 
+	 * @return the message.
+	 */
+	public ByteBuffer getMessage() {
+		return message.duplicate();
+	}
+
+	/**
+	 * Returns a read-only view of the signature as stored in the frame.
+	 * 
+	 * @return the signature.
+	 */
+	public ByteBuffer getSignature() {
+		return signature.duplicate();
+	}
+
+	/**
+	 * Returns the signature in the encoding expected by the Signature class,
+	 * i.e. raw signatures are converted back to DER.
+	 * 
+	 * @return the signature entity.
+	 * @throws SignatureException
+	 *             thrown if a raw signature is malformed.
+	 */
+	public SignatureEntity getSignatureEntity() throws SignatureException {
+		byte[] sig = new byte[signature.remaining()];
+		signature.duplicate().get(sig);
+
+		if (isRawSignature())
+			sig = SignatureConverter.toDER(sig);
+
+		return SignatureEntity.wrap(sig);
+	}
+
+	private static int getLengthSize(int length) {
+		int size = 1;
+
+		while ((length >>>= 7) != 0)
+			size++;
+
+		return size;
+	}
+
+	private static void putLength(ByteBuffer buf, int length) {
+		while ((length & ~0x7F) != 0) {
+			buf.put((byte) (length & 0x7F | 0x80));
+			length >>>= 7;
+		}
+
+		buf.put((byte) length);
+	}
+
+	private static int getLength(ByteBuffer buf) throws SignatureException {
+		int length = 0;
+
+		for (int shift = 0; shift < 32; shift += 7) {
+			if (!buf.hasRemaining())
+				throw new SignatureException("Truncated payload frame.");
+
+			int b = buf.get() & 0xFF;
+			length |= (b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0) {
+				if (length < 0)
+					break;
+				return length;
+			}
+		}
+
+		throw new SignatureException("Invalid message length.");
+	}
+}
@@ -1,14 +1,21 @@
 package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures;
 
 import java.io.Serializable;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.security.Signature;
+import java.security.SignatureException;
 import java.util.Arrays;
 
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.handler.PreparedECKey;
+
 /**
  * This class represents a signature entity and can be used to handle
  * signature's data from the Signature class easier. It contains a byte array
  * which stores the data. For retrieving the data or data length use the
- * {@link #get()} or {@link #size()} method.
+ * {@link #get()} or {@link #size()} method. On hot paths use
+ * {@link #asByteBuffer()}, {@link #copyTo(byte[], int)},
+ * {@link #verify(Signature)} or {@link #verify(PreparedECKey, byte[])}
+ * instead, which do not copy the data.
  * 
  * @author Stefan Haselwanter
  *
@@ -21,11 +28,29 @@ public class SignatureEntity implements Serializable {
 	 */
 	private static final long serialVersionUID = 5140970850220471267L;
 	private byte[] data;
+	// Built on first use, the data never changes.
+	private transient String text;
 
 	public SignatureEntity(byte[] sign) {
 		data = Arrays.copyOf(sign, sign.length);
 	}
 
+	private SignatureEntity(byte[] sign, boolean copy) {
+		data = copy ? Arrays.copyOf(sign, sign.length) : sign;
+	}
+
+	/**
+	 * Returns a signature entity which uses the given array without copying
+	 * it. The caller must not modify the array afterwards.
+	 * 
+	 * @param sign
+	 *            the signature's data.
+	 * @return the signature entity.
+	 */
+	public static SignatureEntity wrap(byte[] sign) {
+		return new SignatureEntity(sign, false);
+	}
+
 	public byte[] get() {
 		return Arrays.copyOf(data, data.length);
 	}
@@ -34,10 +59,72 @@ public class SignatureEntity implements Serializable {
 		return data.length;
 	}
 
+	/**
+	 * Returns a read-only view of the signature's data without copying it.
+	 * 
+	 * @return the data.
+	 */
+	public ByteBuffer asByteBuffer() {
+		return ByteBuffer.wrap(data).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Copies the signature's data into a caller-provided array.
+	 * 
+	 * @param dst
+	 *            the destination array.
+	 * @param offset
+	 *            the offset in the destination array.
+	 * @return the number of bytes copied, i.e. {@link #size()}.
+	 */
+	public int copyTo(byte[] dst, int offset) {
+		System.arraycopy(data, 0, dst, offset, data.length);
+
+		return data.length;
+	}
+
+	/**
+	 * Verifies this signature with a Signature object which has been
+	 * initialized for verification and supplied with the data, without
+	 * copying the signature.
+	 * 
+	 * @param engine
+	 *            the Signature object.
+	 * @return true, if the signature is valid, false otherwise.
+	 * @throws SignatureException
+	 */
+	public boolean verify(Signature engine) throws SignatureException {
+		return engine.verify(data);
+	}
+
+	/**
+	 * Verifies this DER encoded ECDSA signature on a message digest with a
+	 * prepared public key, without copying the signature.
+	 * 
+	 * @param key
+	 *            the prepared public key.
+	 * @param digest
+	 *            the hash of the message.
+	 * @return true, if the signature is valid, false otherwise.
+	 */
+	public boolean verify(PreparedECKey key, byte[] digest) {
+		return key.verify(data, digest);
+	}
+
 	@Override
 	public String toString() {
-		return SIG_START_TAG + new String(data, StandardCharsets.ISO_8859_1)
-				+ SIG_END_TAG;
+		String s = text;
+
+		if (s == null) {
+			StringBuilder sb = new StringBuilder(SIG_START_TAG.length()
+					+ data.length + SIG_END_TAG.length());
+			sb.append(SIG_START_TAG);
+			for (byte b : data)
+				sb.append((char) (b & 0xFF));
+			text = s = sb.append(SIG_END_TAG).toString();
+		}
+
+		return s;
 	}
 
 	@Override
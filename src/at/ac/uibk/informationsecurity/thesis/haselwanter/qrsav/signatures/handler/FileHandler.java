@@ -2,9 +2,20 @@ package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.handl
 
 import java.awt.image.RenderedImage;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.Key;
 import java.security.KeyFactory;
 import java.security.KeyPair;
@@ -21,7 +32,9 @@ import java.util.Arrays;
 import javax.imageio.ImageIO;
 
 import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.SignatureEntity;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpec;
 import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpecHolder;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpecRegistry;
 
 /**
  * This class is responsible for all file handling stuff like storing or reading
@@ -36,7 +49,15 @@ public class FileHandler {
 	public static final String keyDir = "keys/";
 	public static final String signDir = "signs/";
 	public static final String codeDir = "codes/";
+	// Files of at least this size are memory-mapped by readFileBuffer().
+	public static final long MAP_THRESHOLD = 1 << 20;
+	// Number of decoded keys and signatures kept in memory.
+	public static final int CACHE_SIZE = 64;
 	private static FileHandler instance = null;
+	private static final LruCache<String, Key> keyCache = new LruCache<>(
+			"Key", CACHE_SIZE);
+	private static final LruCache<String, SignatureEntity> signCache = new LruCache<>(
+			"Signature", CACHE_SIZE);
 	private SignatureSpecHolder holder;
 
 	public static FileHandler getInstance(String src, SignatureSpecHolder holder) {
@@ -48,6 +69,24 @@ public class FileHandler {
 		createDirectories(src);
 	}
 
+	/**
+	 * Returns the cache of decoded keys shared by all file handlers.
+	 * 
+	 * @return the key cache.
+	 */
+	public static LruCache<String, Key> getKeyCache() {
+		return keyCache;
+	}
+
+	/**
+	 * Returns the cache of signatures shared by all file handlers.
+	 * 
+	 * @return the signature cache.
+	 */
+	public static LruCache<String, SignatureEntity> getSignatureCache() {
+		return signCache;
+	}
+
 	/**
 	 * Returns the public key from a specific file.
 	 * 
@@ -74,35 +113,79 @@ public class FileHandler {
 	public KeyPair getKeyPair(String keyFileName)
 			throws NoSuchAlgorithmException, NoSuchProviderException,
 			InvalidKeySpecException, IOException {
-
-		if (!isDirEmpty(fileDir + keyDir))
-			return new KeyPair(getPublicKey(keyFileName),
-					getPrivateKey(keyFileName));
-
-		return null;
+		// Both keys decoded before, no need to look at the key directory.
+		Key publicKey = keyCache.get(getKeyCacheName(keyFileName, true));
+		Key privateKey = keyCache.get(getKeyCacheName(keyFileName, false));
+		if (publicKey != null && privateKey != null)
+			return new KeyPair((PublicKey) publicKey, (PrivateKey) privateKey);
+
+		if (isDirEmpty(fileDir + keyDir))
+			return null;
+
+		// Only load the missing keys, the cache has been asked already.
+		if (publicKey == null)
+			publicKey = loadKey(keyFileName, true);
+		if (privateKey == null)
+			privateKey = loadKey(keyFileName, false);
+
+		return new KeyPair((PublicKey) publicKey, (PrivateKey) privateKey);
 	}
 
 	private Key getKey(String keyFileName, boolean isPublicKey)
 			throws IOException, NoSuchProviderException,
 			NoSuchAlgorithmException, InvalidKeySpecException {
-		String suffix = "-" + holder.getAlgorithmForKeys().toLowerCase();
+		Key key = keyCache.get(getKeyCacheName(keyFileName, isPublicKey));
 
-		if (isPublicKey)
-			suffix = suffix.concat(".pub");
+		if (key != null)
+			return key;
+
+		return loadKey(keyFileName, isPublicKey);
+	}
 
-		byte[] data = readFile(keyDir + keyFileName.concat(suffix));
-		byte[] encKey = Arrays.copyOf(data, data.length);
-		KeyFactory keyFactory = KeyFactory.getInstance(
-				holder.getAlgorithmForKeys(), holder.getProvider());
+	/**
+	 * Reads and decodes a key from its file and puts it into the key cache.
+	 */
+	private Key loadKey(String keyFileName, boolean isPublicKey)
+			throws IOException, NoSuchProviderException,
+			NoSuchAlgorithmException, InvalidKeySpecException {
+		Key key;
+		byte[] encKey = readFile(getKeyFile(keyFileName, isPublicKey));
+		// Key factory of the calling thread, the provider is resolved once.
+		KeyFactory keyFactory = SignatureSpecRegistry.get(holder.getSpec())
+				.getKeyFactory();
 
 		KeySpec keySpec;
 		if (isPublicKey) {
 			keySpec = new X509EncodedKeySpec(encKey);
-			return keyFactory.generatePublic(keySpec);
+			key = keyFactory.generatePublic(keySpec);
+		} else {
+			keySpec = new PKCS8EncodedKeySpec(encKey);
+			key = keyFactory.generatePrivate(keySpec);
 		}
 
-		keySpec = new PKCS8EncodedKeySpec(encKey);
-		return keyFactory.generatePrivate(keySpec);
+		keyCache.put(getKeyCacheName(keyFileName, isPublicKey), key);
+
+		return key;
+	}
+
+	private String getKeyFile(String keyFileName, boolean isPublicKey) {
+		String suffix = "-" + holder.getSpec().getKeyName().toLowerCase();
+
+		if (isPublicKey)
+			suffix = suffix.concat(".pub");
+
+		return keyDir + keyFileName.concat(suffix);
+	}
+
+	private String getKeyCacheName(String keyFileName, boolean isPublicKey) {
+		// The decoded key depends on algorithm and provider.
+		return getKeyFile(keyFileName, isPublicKey) + "/"
+				+ holder.getAlgorithmForKeys() + "/" + holder.getProvider();
+	}
+
+	private String getSignFile(String file) {
+		return signDir + file + "-"
+				+ holder.getSpec().getKeyName().toLowerCase() + "-sign.sig";
 	}
 
 	/**
@@ -114,10 +197,15 @@ public class FileHandler {
 	 * @throws IOException
 	 */
 	public SignatureEntity getSignature(String signFile) throws IOException {
-		byte[] sign = readFile(signDir + signFile + "-"
-				+ holder.getAlgorithmForKeys().toLowerCase() + "-sign.sig");
+		String file = getSignFile(signFile);
+		SignatureEntity sign = signCache.get(file);
+
+		if (sign == null) {
+			sign = SignatureEntity.wrap(readFile(file));
+			signCache.put(file, sign);
+		}
 
-		return new SignatureEntity(sign);
+		return sign;
 	}
 
 	/**
@@ -131,8 +219,10 @@ public class FileHandler {
 	 */
 	public void saveSignature(SignatureEntity sign, String file)
 			throws IOException {
-		writeFile(sign.get(), signDir + file + "-"
-				+ holder.getAlgorithmForKeys().toLowerCase() + "-sign.sig");
+		String signFile = getSignFile(file);
+
+		writeFile(sign.get(), signFile);
+		signCache.invalidate(signFile);
 	}
 
 	/**
@@ -145,19 +235,17 @@ public class FileHandler {
 	 * @throws IOException
 	 */
 	public void saveKey(Key key, String file) throws IOException {
-		String suffix = "-" + holder.getAlgorithmForKeys().toLowerCase();
-
-		if (key instanceof PublicKey)
-			suffix = suffix.concat(".pub");
+		boolean isPublicKey = key instanceof PublicKey;
 
-		writeFile(key.getEncoded(), keyDir + file.concat(suffix));
+		writeFile(key.getEncoded(), getKeyFile(file, isPublicKey));
+		keyCache.invalidate(getKeyCacheName(file, isPublicKey));
 	}
 
 	/**
 	 * Saves the key pair to separated files named by the specific file name.
 	 * The private key will be saved to 'file-{@link
-	 * SignatureSpecHolder.#getAlgorithmForKeys()}' and the public key to 'file-
-	 * {@link SignatureSpecHolder.#getAlgorithmForKeys()}.pub'.
+	 * SignatureSpec#getKeyName()}' and the public key to 'file-
+	 * {@link SignatureSpec#getKeyName()}.pub'.
 	 * 
 	 * @param keys
 	 *            the key pair.
@@ -176,20 +264,99 @@ public class FileHandler {
 	}
 
 	/**
-	 * Returns the content of a specific file as a byte array.
+	 * Opens the file for a QR code in a specific format for writing. The
+	 * caller has to close the channel.
+	 * 
+	 * @param file
+	 *            the code file name.
+	 * @param extension
+	 *            the file extension of the format.
+	 * @return the channel to write the code to.
+	 * @throws IOException
+	 */
+	public FileChannel newCodeChannel(String file, String extension)
+			throws IOException {
+		return open(codeDir + "QRCode-" + file + "." + extension,
+				StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	/**
+	 * Opens a specific file for reading, e.g. to sign it in chunks with
+	 * {@link SignatureHandler#sign(java.nio.channels.ReadableByteChannel, PrivateKey)}
+	 * instead of reading it completely. The caller has to close the channel.
+	 * 
+	 * @param file
+	 *            the file to read.
+	 * @return the channel to read the file from.
+	 * @throws IOException
+	 */
+	public FileChannel newInputChannel(String file) throws IOException {
+		return open(file, StandardOpenOption.READ);
+	}
+
+	/**
+	 * Returns the path of a specific file in the files directory, e.g. to
+	 * sign it memory-mapped with
+	 * {@link SignatureHandler#sign(Path, PrivateKey)}.
+	 * 
+	 * @param file
+	 *            the file name.
+	 * @return the path.
+	 */
+	public Path getPath(String file) {
+		return Paths.get(fileDir + file);
+	}
+
+	/**
+	 * Returns the content of a specific file as a byte array. The file is read
+	 * completely into the returned array without further copies.
 	 * 
 	 * @param file
 	 *            the file to read.
-	 * @return
+	 * @return the file content.
 	 * @throws IOException
 	 */
 	public byte[] readFile(String file) throws IOException {
-		FileInputStream fis = new FileInputStream(fileDir + file);
-		byte[] buf = new byte[fis.available()];
-		fis.read(buf);
-		fis.close();
+		try (FileChannel channel = open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
 
-		return Arrays.copyOf(buf, buf.length);
+			if (size > Integer.MAX_VALUE)
+				throw new IOException("'" + file + "' is too large to read.");
+
+			byte[] buf = new byte[(int) size];
+			ByteBuffer dst = ByteBuffer.wrap(buf);
+
+			// A single read is not guaranteed to return the whole file.
+			while (dst.hasRemaining())
+				if (channel.read(dst) < 0)
+					// File was truncated in the meantime.
+					return Arrays.copyOf(buf, dst.position());
+
+			return buf;
+		}
+	}
+
+	/**
+	 * Returns a read-only view of the content of a specific file. Files of at
+	 * least {@link #MAP_THRESHOLD} bytes are memory-mapped instead of being
+	 * read onto the heap.
+	 * 
+	 * @param file
+	 *            the file to read.
+	 * @return the read-only file content.
+	 * @throws IOException
+	 */
+	public ByteBuffer readFileBuffer(String file) throws IOException {
+		try (FileChannel channel = open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+
+			// The mapping stays valid after the channel is closed.
+			if (size >= MAP_THRESHOLD)
+				return channel.map(MapMode.READ_ONLY, 0, size);
+		}
+
+		return ByteBuffer.wrap(readFile(file)).asReadOnlyBuffer();
 	}
 
 	/**
@@ -202,27 +369,72 @@ public class FileHandler {
 	 * @throws IOException
 	 */
 	public void writeFile(byte[] buf, String file) throws IOException {
-		FileOutputStream fos = new FileOutputStream(fileDir + file);
-		fos.write(buf);
-		fos.close();
+		writeFile(ByteBuffer.wrap(buf), file);
 	}
 
-	public boolean existsSignature(String signName) throws IOException {
-		// Check if signature files exist.
-		if (isDirEmpty(fileDir + signDir))
-			return false;
+	/**
+	 * Writes the remaining bytes of the buffer to a specific file.
+	 * 
+	 * @param buf
+	 *            the buffer to write.
+	 * @param file
+	 *            the file name.
+	 * @throws IOException
+	 */
+	public void writeFile(ByteBuffer buf, String file) throws IOException {
+		Path target = Paths.get(fileDir + file).toAbsolutePath();
+		Path tmp;
 
-		String[] fileNames = new File(fileDir + signDir).list();
-		String pattern = signName.concat(
-				"-" + holder.getAlgorithmForKeys().toLowerCase() + "-sign")
-				.toLowerCase();
+		// Write a temporary file in the same directory and rename it, so
+		// concurrent readers never see a partially written file.
+		try {
+			tmp = Files.createTempFile(target.getParent(), target
+					.getFileName().toString(), ".tmp");
+		} catch (NoSuchFileException e) {
+			throw new FileNotFoundException(fileDir + file
+					+ " (No such file or directory)");
+		}
 
-		// Iterate through signature file names.
-		for (int i = 0; i < fileNames.length; i++)
-			if (fileNames[i].contains(pattern))
-				return true;
+		try {
+			try (FileChannel channel = FileChannel.open(tmp,
+					StandardOpenOption.WRITE)) {
+				while (buf.hasRemaining())
+					channel.write(buf);
+			}
+
+			try {
+				Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
 
-		return false;
+	private static FileChannel open(String file, OpenOption... options)
+			throws IOException {
+		try {
+			return FileChannel.open(Paths.get(fileDir + file), options);
+		} catch (NoSuchFileException e) {
+			// Same exception as thrown by the file streams.
+			throw new FileNotFoundException(fileDir + file
+					+ " (No such file or directory)");
+		}
+	}
+
+	/**
+	 * Checks if the signature file of a specific name exists for the key
+	 * algorithm of the holder.
+	 * 
+	 * @param signName
+	 *            the signature file name as passed to
+	 *            {@link #saveSignature(SignatureEntity, String)}.
+	 * @return True if the signature file exists, false otherwise.
+	 */
+	public boolean existsSignature(String signName) {
+		// The file name is known, so there is no need to list the directory.
+		return Files.isRegularFile(Paths.get(fileDir + getSignFile(signName)));
 	}
 
 	/**
@@ -238,9 +450,11 @@ public class FileHandler {
 		File dir = new File(name);
 
 		if (dir.isDirectory()) {
-			if (dir.list().length > 0)
-				return false;
-			return true;
+			// Only look at the first entry instead of listing all files.
+			try (DirectoryStream<Path> entries = Files
+					.newDirectoryStream(dir.toPath())) {
+				return !entries.iterator().hasNext();
+			}
 		}
 
 		throw new IOException("'" + name + "' is not a directory.");
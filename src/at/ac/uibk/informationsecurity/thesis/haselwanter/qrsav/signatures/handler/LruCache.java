@@ -0,0 +1,119 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.handler;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size-bounded cache which evicts the least recently used entry once it is
+ * full. All methods are synchronized, so the cache can be shared between
+ * threads. It counts hits, misses and evictions.
+ *
+ * @author Stefan Haselwanter
+ *
+ * @param <K>
+ *            the type of the keys.
+ * @param <V>
+ *            the type of the cached values.
+ */
+public class LruCache<K, V> {
+	private final String name;
+	private final int capacity;
+	private final Map<K, V> entries;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * Creates an empty cache.
+	 *
+	 * @param name
+	 *            the name of the cache used by {@link #toString()}.
+	 * @param capacity
+	 *            the maximum number of entries.
+	 */
+	public LruCache(String name, int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity must be positive.");
+
+		this.name = name;
+		this.capacity = capacity;
+		// Access order makes the eldest entry the least recently used one.
+		this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+				if (size() > LruCache.this.capacity) {
+					evictions++;
+					return true;
+				}
+
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cached value of the key.
+	 *
+	 * @param key
+	 *            the key.
+	 * @return the value, or null if the key is not cached.
+	 */
+	public synchronized V get(K key) {
+		V value = entries.get(key);
+
+		if (value == null)
+			misses++;
+		else
+			hits++;
+
+		return value;
+	}
+
+	public synchronized void put(K key, V value) {
+		entries.put(key, value);
+	}
+
+	/**
+	 * Removes the key from the cache, e.g. because the underlying file was
+	 * written.
+	 *
+	 * @param key
+	 *            the key.
+	 */
+	public synchronized void invalidate(K key) {
+		entries.remove(key);
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return name + " cache: " + entries.size() + "/" + capacity
+				+ " entries, " + hits + " hits, " + misses + " misses, "
+				+ evictions + " evictions";
+	}
+}
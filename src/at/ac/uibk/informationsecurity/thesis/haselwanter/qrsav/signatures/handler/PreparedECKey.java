@@ -0,0 +1,228 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.handler;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.InvalidKeyException;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.crypto.signers.StandardDSAEncoding;
+import org.bouncycastle.jcajce.provider.asymmetric.util.ECUtil;
+import org.bouncycastle.math.ec.ECCurve;
+import org.bouncycastle.math.ec.ECFieldElement;
+import org.bouncycastle.math.ec.ECPoint;
+
+/**
+ * This class verifies many ECDSA signatures under the same public key faster
+ * than the Signature class. The key is decoded once and comb tables of
+ * {@link #COMB_WIDTH} bits are precomputed for both the base point and the
+ * public point. Every verification then computes 'u1 * G + u2 * Q' in a
+ * single pass with one doubling per comb column, i.e. a few dozen instead of
+ * one per bit of the group order. The comb looks up its tables in variable
+ * time, which is safe here since all inputs of a verification are public.
+ * Prepared keys are immutable and can be shared between threads; use
+ * {@link #get(PublicKey)} to reuse them across batches.
+ *
+ * @author Stefan Haselwanter
+ *
+ */
+public class PreparedECKey {
+	/**
+	 * Number of bits of a scalar combined into one table lookup. Each table
+	 * holds 2^COMB_WIDTH - 1 points.
+	 */
+	public static final int COMB_WIDTH = 8;
+	// Building the tables costs about as much as a few verifications.
+	private static final LruCache<PublicKey, PreparedECKey> cache = new LruCache<>(
+			"Prepared EC keys", 16);
+	private final BigInteger n;
+	private final ECPoint infinity;
+	// Number of columns of the comb, i.e. bits per tooth.
+	private final int columns;
+	private final ECPoint[] gTable;
+	private final ECPoint[] qTable;
+
+	private PreparedECKey(ECPublicKeyParameters params) {
+		ECDomainParameters domain = params.getParameters();
+
+		n = domain.getN();
+		infinity = domain.getCurve().getInfinity();
+		columns = (n.bitLength() + COMB_WIDTH - 1) / COMB_WIDTH;
+		gTable = getTable(domain.getG());
+		qTable = getTable(params.getQ());
+	}
+
+	/**
+	 * Returns the prepared form of an EC public key, building it on first use.
+	 *
+	 * @param key
+	 *            the EC public key.
+	 * @return the prepared key.
+	 * @throws InvalidKeyException
+	 *             thrown if the key is no EC public key.
+	 */
+	public static PreparedECKey get(PublicKey key) throws InvalidKeyException {
+		PreparedECKey prepared = cache.get(key);
+
+		if (prepared == null) {
+			if (!(key instanceof ECPublicKey))
+				throw new InvalidKeyException("No EC public key.");
+
+			prepared = new PreparedECKey(
+					(ECPublicKeyParameters) ECUtil.generatePublicKeyParameter(key));
+			cache.put(key, prepared);
+		}
+
+		return prepared;
+	}
+
+	/**
+	 * Returns the cache of prepared keys, e.g. to query its hit and miss
+	 * counters.
+	 *
+	 * @return the cache.
+	 */
+	public static LruCache<PublicKey, PreparedECKey> getCache() {
+		return cache;
+	}
+
+	/**
+	 * Verifies a DER encoded ECDSA signature on a message digest, with the
+	 * same result as the Signature class for the corresponding algorithm.
+	 *
+	 * @param sign
+	 *            the DER encoded signature.
+	 * @param digest
+	 *            the hash of the message.
+	 * @return true, if the signature is valid, false otherwise, also if it is
+	 *         malformed.
+	 */
+	public boolean verify(byte[] sign, byte[] digest) {
+		BigInteger[] rs;
+
+		try {
+			rs = StandardDSAEncoding.INSTANCE.decode(n, sign);
+		} catch (IOException | RuntimeException e) {
+			// Corrupted tags, e.g. a BIT STRING instead of an INTEGER, make
+			// the decoder throw a ClassCastException.
+			return false;
+		}
+
+		BigInteger r = rs[0];
+		BigInteger s = rs[1];
+		if (r.signum() <= 0 || s.signum() <= 0)
+			return false;
+
+		BigInteger c = s.modInverse(n);
+		BigInteger u1 = getE(digest).multiply(c).mod(n);
+		BigInteger u2 = r.multiply(c).mod(n);
+		byte[] k1 = u1.toByteArray();
+		byte[] k2 = u2.toByteArray();
+		ECPoint point = infinity;
+
+		for (int column = columns - 1; column >= 0; column--) {
+			point = point.twice();
+
+			int g = getTooth(k1, column);
+			if (g != 0)
+				point = point.add(gTable[g - 1]);
+
+			int q = getTooth(k2, column);
+			if (q != 0)
+				point = point.add(qTable[q - 1]);
+		}
+
+		if (point.isInfinity())
+			return false;
+
+		return hasXCoord(point, r);
+	}
+
+	/**
+	 * Checks if the x coordinate of the point reduced modulo the group order
+	 * equals r. Like the ECDSASigner of Bouncy Castle it compares r times the
+	 * denominator of x with its projective numerator for Jacobian points
+	 * instead of normalizing the point, which would take a field inversion.
+	 */
+	private boolean hasXCoord(ECPoint point, BigInteger r) {
+		ECCurve curve = point.getCurve();
+
+		switch (curve.getCoordinateSystem()) {
+		case ECCurve.COORD_JACOBIAN:
+		case ECCurve.COORD_JACOBIAN_CHUDNOVSKY:
+		case ECCurve.COORD_JACOBIAN_MODIFIED:
+			ECFieldElement z = point.getZCoord(0);
+			ECFieldElement denominator = z.square();
+			ECFieldElement x = point.getXCoord();
+
+			// x mod n equals r if x is one of r, r + n, ... below the prime.
+			for (BigInteger v = r; curve.isValidFieldElement(v); v = v.add(n))
+				if (curve.fromBigInteger(v).multiply(denominator).equals(x))
+					return true;
+
+			return false;
+
+		default:
+			return point.normalize().getAffineXCoord().toBigInteger().mod(n)
+					.equals(r);
+		}
+	}
+
+	/**
+	 * Returns the table of all sums of the points '2^(i * columns) * p' for
+	 * the bits i set in the index plus one, in affine coordinates.
+	 */
+	private ECPoint[] getTable(ECPoint p) {
+		ECPoint[] table = new ECPoint[(1 << COMB_WIDTH) - 1];
+		ECPoint base = p.normalize();
+
+		for (int i = 0; i < COMB_WIDTH; i++) {
+			int bit = 1 << i;
+
+			table[bit - 1] = base;
+			for (int j = 1; j < bit; j++)
+				table[bit + j - 1] = table[j - 1].add(base);
+
+			base = base.timesPow2(columns);
+		}
+
+		p.getCurve().normalizeAll(table);
+
+		return table;
+	}
+
+	/**
+	 * Returns the bits of the big-endian scalar at the column of every tooth
+	 * of the comb.
+	 */
+	private int getTooth(byte[] k, int column) {
+		int tooth = 0;
+
+		for (int i = COMB_WIDTH - 1; i >= 0; i--) {
+			int bit = i * columns + column;
+			int index = k.length - 1 - (bit >>> 3);
+
+			tooth <<= 1;
+			if (index >= 0)
+				tooth |= k[index] >>> (bit & 7) & 1;
+		}
+
+		return tooth;
+	}
+
+	/**
+	 * Converts the digest to an integer, keeping its leftmost bits if it is
+	 * longer than the group order like the ECDSASigner of Bouncy Castle.
+	 */
+	private BigInteger getE(byte[] digest) {
+		int bits = digest.length * 8;
+		BigInteger e = new BigInteger(1, digest);
+
+		if (n.bitLength() < bits)
+			e = e.shiftRight(bits - n.bitLength());
+
+		return e;
+	}
+}
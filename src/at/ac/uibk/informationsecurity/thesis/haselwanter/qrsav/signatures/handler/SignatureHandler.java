@@ -1,31 +1,85 @@
 package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.handler;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.InvalidKeyException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.Signature;
 import java.security.SignatureException;
+import java.security.interfaces.ECPublicKey;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.PayloadFrame;
 import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.SignatureEntity;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.DSAParameterStore;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpec;
 import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpecHolder;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.TreeHash;
 
 /**
  * This class defines methods for signing any message to create a
  * {@link SignatureEntity} object and for verifying a digital signature.
+ * Messages too large for memory can be signed and verified from streams,
+ * channels or memory-mapped files, which are read in fixed-size chunks, or
+ * signed over their {@link TreeHash} computed on all processors.
  * 
  * @author Stefan Haselwanter
  *
  */
 public class SignatureHandler {
+	// Signature objects shared by all handlers.
+	private static final SignaturePool pool = new SignaturePool();
+	// Batches smaller than this are processed by the calling thread only.
+	private static final int MIN_BATCH_PER_WORKER = 16;
+	/**
+	 * Number of bytes supplied to the Signature object at once by the
+	 * streaming methods.
+	 */
+	public static final int CHUNK_SIZE = 64 * 1024;
+	/**
+	 * Maximum number of bytes of a file mapped at once by the streaming
+	 * methods.
+	 */
+	public static final long MAP_WINDOW = 1L << 28;
+	// DER prefix of the PKCS #1 DigestInfo of a SHA-256 hash.
+	private static final byte[] SHA256_DIGEST_INFO = { 0x30, 0x31, 0x30, 0x0d,
+			0x06, 0x09, 0x60, (byte) 0x86, 0x48, 0x01, 0x65, 0x03, 0x04, 0x02,
+			0x01, 0x05, 0x00, 0x04, 0x20 };
 	private SignatureSpecHolder holder;
 
 	public SignatureHandler(SignatureSpecHolder holder) {
 		this.holder = holder;
 	}
 
+	/**
+	 * Returns the pool of Signature objects used by all handlers, e.g. to
+	 * query its hit and miss counters.
+	 * 
+	 * @return the signature pool.
+	 */
+	public static SignaturePool getPool() {
+		return pool;
+	}
+
 	/**
 	 * Generates a digital signature for specific data using the private key.
 	 * 
@@ -42,16 +96,70 @@ public class SignatureHandler {
 	public SignatureEntity sign(byte[] data, PrivateKey key)
 			throws NoSuchAlgorithmException, NoSuchProviderException,
 			InvalidKeyException, SignatureException {
+		SignatureSpec spec = holder.getSpec();
+		String algorithm = spec.getAlgorithmForSign();
+		String provider = spec.getProvider();
 		// Signature object for generating signatures using holder's algorithm
-		// for signatures.
-		Signature dsa = Signature.getInstance(holder.getAlgorithmForSign(),
-				holder.getProvider());
-		// Initialize signing process.
-		dsa.initSign(key);
-		// Supply input to Signature object.
-		dsa.update(data);
-		// Sign data.
-		return new SignatureEntity(dsa.sign());
+		// for signatures, initialized with the private key.
+		Signature dsa = pool.getForSign(algorithm, provider, key);
+		boolean done = false;
+
+		try {
+			// Supply input to Signature object.
+			dsa.update(data);
+			// Sign data.
+			SignatureEntity sign = SignatureEntity.wrap(dsa.sign());
+			done = true;
+
+			return sign;
+		} finally {
+			if (!done)
+				pool.discard(algorithm, provider, true);
+		}
+	}
+
+	/**
+	 * Generates a digital signature for the remaining bytes of the buffer and
+	 * stores it in a caller-provided array instead of allocating a new
+	 * {@link SignatureEntity}. The position of the buffer is moved to its
+	 * limit. Use {@link #getMaxSignatureSize(String, int, boolean)} to size
+	 * the array.
+	 * 
+	 * @param data
+	 *            the data to sign.
+	 * @param key
+	 *            the private key.
+	 * @param out
+	 *            the array to store the signature in.
+	 * @param offset
+	 *            the offset in the array.
+	 * @return the length of the signature.
+	 * @throws NoSuchAlgorithmException
+	 * @throws NoSuchProviderException
+	 * @throws InvalidKeyException
+	 * @throws SignatureException
+	 *             thrown if signing fails or the signature does not fit into
+	 *             the array.
+	 */
+	public int sign(ByteBuffer data, PrivateKey key, byte[] out, int offset)
+			throws NoSuchAlgorithmException, NoSuchProviderException,
+			InvalidKeyException, SignatureException {
+		SignatureSpec spec = holder.getSpec();
+		String algorithm = spec.getAlgorithmForSign();
+		String provider = spec.getProvider();
+		Signature dsa = pool.getForSign(algorithm, provider, key);
+		boolean done = false;
+
+		try {
+			dsa.update(data);
+			int length = dsa.sign(out, offset, out.length - offset);
+			done = true;
+
+			return length;
+		} finally {
+			if (!done)
+				pool.discard(algorithm, provider, true);
+		}
 	}
 
 	/**
@@ -72,17 +180,877 @@ public class SignatureHandler {
 	public boolean verify(SignatureEntity sign, byte[] data, PublicKey key)
 			throws NoSuchAlgorithmException, NoSuchProviderException,
 			InvalidKeyException, SignatureException {
+		return verify(sign, ByteBuffer.wrap(data), key);
+	}
+
+	/**
+	 * Verifies the digital signature of a payload frame on its message using
+	 * the public key. Signatures of frames with
+	 * {@link PayloadFrame#FLAG_TREE_HASH} are checked against the tree hash of
+	 * the message.
+	 * 
+	 * @param frame
+	 *            the parsed payload frame.
+	 * @param key
+	 *            the public key.
+	 * @return true, if signature is valid, false otherwise.
+	 * @throws NoSuchAlgorithmException
+	 * @throws NoSuchProviderException
+	 * @throws InvalidKeyException
+	 * @throws SignatureException
+	 */
+	public boolean verify(PayloadFrame frame, PublicKey key)
+			throws NoSuchAlgorithmException, NoSuchProviderException,
+			InvalidKeyException, SignatureException {
+		if (frame.isTreeHash())
+			return verifyTree(frame.getSignatureEntity(), frame.getMessage(),
+					key);
+
+		return verify(frame.getSignatureEntity(), frame.getMessage(), key);
+	}
+
+	/**
+	 * Verifies a digital signature on the remaining bytes of the buffer using
+	 * the public key. The position of the buffer is moved to its limit.
+	 * 
+	 * @param sign
+	 *            the digital signature to verify.
+	 * @param data
+	 *            the data.
+	 * @param key
+	 *            the public key.
+	 * @return true, if signature is valid, false otherwise.
+	 * @throws NoSuchAlgorithmException
+	 * @throws NoSuchProviderException
+	 * @throws InvalidKeyException
+	 * @throws SignatureException
+	 */
+	public boolean verify(SignatureEntity sign, ByteBuffer data, PublicKey key)
+			throws NoSuchAlgorithmException, NoSuchProviderException,
+			InvalidKeyException, SignatureException {
+		SignatureSpec spec = holder.getSpec();
+		String algorithm = spec.getAlgorithmForSign();
+		String provider = spec.getProvider();
 		// Signature object for verifying signatures using holder's algorithm
-		// for signatures. Note: Has to be the same signature algorithm as for
-		// generating!
-		Signature dsa = Signature.getInstance(holder.getAlgorithmForSign(),
-				holder.getProvider());
-		// Initialize verification process.
-		dsa.initVerify(key);
-		// Supply input to Signature object.
-		dsa.update(data);
+		// for signatures, initialized with the public key. Note: Has to be the
+		// same signature algorithm as for generating!
+		Signature dsa = pool.getForVerify(algorithm, provider, key);
+		boolean done = false;
+
+		try {
+			// Supply input to Signature object.
+			dsa.update(data);
+			boolean verifies = sign.verify(dsa);
+			done = true;
+
+			return verifies;
+		} finally {
+			if (!done)
+				pool.discard(algorithm, provider, false);
+		}
+	}
+
+	/**
+	 * Generates a digital signature for all bytes of the stream using the
+	 * private key. The stream is read in chunks of {@link #CHUNK_SIZE} bytes,
+	 * so the memory needed does not depend on the size of the input. The
+	 * stream is not closed.
+	 * 
+	 * @param in
+	 *            the stream to sign.
+	 * @param key
+	 *            the private key.
+	 * @return the digital signature.
+	 * @throws IOException
+	 * @throws NoSuchAlgorithmException
+	 * @throws NoSuchProviderException
+	 * @throws InvalidKeyException
+	 * @throws SignatureException
+	 */
+	public SignatureEntity sign(final InputStream in, PrivateKey key)
+			throws IOException, NoSuchAlgorithmException,
+			NoSuchProviderException, InvalidKeyException, SignatureException {
+		return sign(new Input() {
+			@Override
+			public void update(Signature dsa) throws IOException,
+					SignatureException {
+				updateFrom(dsa, in);
+			}
+		}, key);
+	}
+
+	/**
+	 * Generates a digital signature for all bytes read from the channel until
+	 * its end using the private key. The channel is read in chunks of
+	 * {@link #CHUNK_SIZE} bytes and is not closed.
+	 * 
+	 * @param in
+	 *            the channel to sign.
+	 * @param key
+	 *            the private key.
+	 * @return the digital signature.
+	 * @throws IOException
+	 * @throws NoSuchAlgorithmException
+	 * @throws NoSuchProviderException
+	 * @throws InvalidKeyException
+	 * @throws SignatureException
+	 */
+	public SignatureEntity sign(final ReadableByteChannel in, PrivateKey key)
+			throws IOException, NoSuchAlgorithmException,
+			NoSuchProviderException, InvalidKeyException, SignatureException {
+		return sign(new Input() {
+			@Override
+			public void update(Signature dsa) throws IOException,
+					SignatureException {
+				updateFrom(dsa, in);
+			}
+		}, key);
+	}
+
+	/**
+	 * Generates a digital signature for a file using the private key. The
+	 * file is memory-mapped in windows of at most {@link #MAP_WINDOW} bytes,
+	 * which are copied to the Signature object in chunks of
+	 * {@link #CHUNK_SIZE} bytes, so files of any size can be signed.
+	 * 
+	 * @param file
+	 *            the file to sign.
+	 * @param key
+	 *            the private key.
+	 * @return the digital signature.
+	 * @throws IOException
+	 * @throws NoSuchAlgorithmException
+	 * @throws NoSuchProviderException
+	 * @throws InvalidKeyException
+	 * @throws SignatureException
+	 */
+	public SignatureEntity sign(final Path file, PrivateKey key)
+			throws IOException, NoSuchAlgorithmException,
+			NoSuchProviderException, InvalidKeyException, SignatureException {
+		return sign(new Input() {
+			@Override
+			public void update(Signature dsa) throws IOException,
+					SignatureException {
+				updateFrom(dsa, file);
+			}
+		}, key);
+	}
+
+	/**
+	 * Verifies a digital signature on all bytes of the stream using the public
+	 * key. The stream is read in chunks of {@link #CHUNK_SIZE} bytes and is
+	 * not closed.
+	 * 
+	 * @param sign
+	 *            the digital signature to verify.
+	 * @param in
+	 *            the stream.
+	 * @param key
+	 *            the public key.
+	 * @return true, if signature is valid, false otherwise.
+	 * @throws IOException
+	 * @throws NoSuchAlgorithmException
+	 * @throws NoSuchProviderException
+	 * @throws InvalidKeyException
+	 * @throws SignatureException
+	 */
+	public boolean verify(SignatureEntity sign, final InputStream in,
+			PublicKey key) throws IOException, NoSuchAlgorithmException,
+			NoSuchProviderException, InvalidKeyException, SignatureException {
+		return verify(sign, new Input() {
+			@Override
+			public void update(Signature dsa) throws IOException,
+					SignatureException {
+				updateFrom(dsa, in);
+			}
+		}, key);
+	}
+
+	/**
+	 * Verifies a digital signature on all bytes read from the channel until
+	 * its end using the public key. The channel is read in chunks of
+	 * {@link #CHUNK_SIZE} bytes and is not closed.
+	 * 
+	 * @param sign
+	 *            the digital signature to verify.
+	 * @param in
+	 *            the channel.
+	 * @param key
+	 *            the public key.
+	 * @return true, if signature is valid, false otherwise.
+	 * @throws IOException
+	 * @throws NoSuchAlgorithmException
+	 * @throws NoSuchProviderException
+	 * @throws InvalidKeyException
+	 * @throws SignatureException
+	 */
+	public boolean verify(SignatureEntity sign, final ReadableByteChannel in,
+			PublicKey key) throws IOException, NoSuchAlgorithmException,
+			NoSuchProviderException, InvalidKeyException, SignatureException {
+		return verify(sign, new Input() {
+			@Override
+			public void update(Signature dsa) throws IOException,
+					SignatureException {
+				updateFrom(dsa, in);
+			}
+		}, key);
+	}
+
+	/**
+	 * Verifies a digital signature on a file using the public key. The file is
+	 * memory-mapped like in {@link #sign(Path, PrivateKey)}.
+	 * 
+	 * @param sign
+	 *            the digital signature to verify.
+	 * @param file
+	 *            the file.
+	 * @param key
+	 *            the public key.
+	 * @return true, if signature is valid, false otherwise.
+	 * @throws IOException
+	 * @throws NoSuchAlgorithmException
+	 * @throws NoSuchProviderException
+	 * @throws InvalidKeyException
+	 * @throws SignatureException
+	 */
+	public boolean verify(SignatureEntity sign, final Path file, PublicKey key)
+			throws IOException, NoSuchAlgorithmException,
+			NoSuchProviderException, InvalidKeyException, SignatureException {
+		return verify(sign, new Input() {
+			@Override
+			public void update(Signature dsa) throws IOException,
+					SignatureException {
+				updateFrom(dsa, file);
+			}
+		}, key);
+	}
+
+	/**
+	 * Generates a digital signature over the {@link TreeHash} of the remaining
+	 * bytes of the buffer using the private key. The leaves are hashed in
+	 * parallel by the shared worker threads and the root is signed with the
+	 * 'NONEwith*' primitive of the holder's signature algorithm, which has to
+	 * be one of 'SHA256withDSA', 'SHA256withECDSA' or 'SHA256withRSA'. RSA
+	 * signatures contain the PKCS #1 DigestInfo of SHA-256 like regular
+	 * 'SHA256withRSA' signatures. Store such signatures in a
+	 * {@link PayloadFrame} with {@link PayloadFrame#FLAG_TREE_HASH}, so
+	 * verifiers know how to check them.
+	 * 
+	 * @param data
+	 *            the data to sign.
+	 * @param key
+	 *            the private key.
+	 * @return the digital signature.
+	 * @throws NoSuchAlgorithmException
+	 *             thrown if the signature algorithm has no tree hash mode.
+	 * @throws NoSuchProviderException
+	 * @throws InvalidKeyException
+	 * @throws SignatureException
+	 */
+	public SignatureEntity signTree(ByteBuffer data, PrivateKey key)
+			throws NoSuchAlgorithmException, NoSuchProviderException,
+			InvalidKeyException, SignatureException {
+		SignatureSpec spec = holder.getSpec();
+		String primitive = getPrimitive(spec.getAlgorithmForSign());
+
+		try {
+			return signRoot(spec.getProvider(), primitive,
+					TreeHash.hash(data, Workers.executor, Workers.THREADS),
+					key);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SignatureException("Tree hashing interrupted.", e);
+		}
+	}
+
+	/**
+	 * Generates a digital signature over the {@link TreeHash} of a file using
+	 * the private key like {@link #signTree(ByteBuffer, PrivateKey)}. The
+	 * file is memory-mapped in parts, so files of any size can be signed.
+	 * 
+	 * @param file
+	 *            the file to sign.
+	 * @param key
+	 *            the private key.
+	 * @return the digital signature.
+	 * @throws IOException
+	 * @throws NoSuchAlgorithmException
+	 *             thrown if the signature algorithm has no tree hash mode.
+	 * @throws NoSuchProviderException
+	 * @throws InvalidKeyException
+	 * @throws SignatureException
+	 */
+	public SignatureEntity signTree(Path file, PrivateKey key)
+			throws IOException, NoSuchAlgorithmException,
+			NoSuchProviderException, InvalidKeyException, SignatureException {
+		SignatureSpec spec = holder.getSpec();
+		String primitive = getPrimitive(spec.getAlgorithmForSign());
+
+		try {
+			return signRoot(spec.getProvider(), primitive,
+					TreeHash.hash(file, Workers.executor, Workers.THREADS),
+					key);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SignatureException("Tree hashing interrupted.", e);
+		}
+	}
+
+	/**
+	 * Verifies a digital signature created by
+	 * {@link #signTree(ByteBuffer, PrivateKey)} on the remaining bytes of the
+	 * buffer using the public key. The position of the buffer is not changed.
+	 * 
+	 * @param sign
+	 *            the digital signature to verify.
+	 * @param data
+	 *            the data.
+	 * @param key
+	 *            the public key.
+	 * @return true, if signature is valid, false otherwise.
+	 * @throws NoSuchAlgorithmException
+	 *             thrown if the signature algorithm has no tree hash mode.
+	 * @throws NoSuchProviderException
+	 * @throws InvalidKeyException
+	 * @throws SignatureException
+	 */
+	public boolean verifyTree(SignatureEntity sign, ByteBuffer data,
+			PublicKey key) throws NoSuchAlgorithmException,
+			NoSuchProviderException, InvalidKeyException, SignatureException {
+		SignatureSpec spec = holder.getSpec();
+		String primitive = getPrimitive(spec.getAlgorithmForSign());
+
+		try {
+			return verifyRoot(sign, spec.getProvider(), primitive,
+					TreeHash.hash(data, Workers.executor, Workers.THREADS),
+					key);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SignatureException("Tree hashing interrupted.", e);
+		}
+	}
+
+	/**
+	 * Verifies a digital signature created by
+	 * {@link #signTree(Path, PrivateKey)} on a file using the public key, e.g.
+	 * the detached signature of a manifest read from a QR code.
+	 * 
+	 * @param sign
+	 *            the digital signature to verify.
+	 * @param file
+	 *            the file.
+	 * @param key
+	 *            the public key.
+	 * @return true, if signature is valid, false otherwise.
+	 * @throws IOException
+	 * @throws NoSuchAlgorithmException
+	 *             thrown if the signature algorithm has no tree hash mode.
+	 * @throws NoSuchProviderException
+	 * @throws InvalidKeyException
+	 * @throws SignatureException
+	 */
+	public boolean verifyTree(SignatureEntity sign, Path file, PublicKey key)
+			throws IOException, NoSuchAlgorithmException,
+			NoSuchProviderException, InvalidKeyException, SignatureException {
+		SignatureSpec spec = holder.getSpec();
+		String primitive = getPrimitive(spec.getAlgorithmForSign());
+
+		try {
+			return verifyRoot(sign, spec.getProvider(), primitive,
+					TreeHash.hash(file, Workers.executor, Workers.THREADS),
+					key);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SignatureException("Tree hashing interrupted.", e);
+		}
+	}
+
+	/**
+	 * Generates digital signatures for a batch of messages using the same
+	 * private key. The batch is split into contiguous parts which are signed
+	 * concurrently by a shared pool of worker threads, one per available
+	 * processor.
+	 * 
+	 * @param data
+	 *            the messages to sign.
+	 * @param key
+	 *            the private key.
+	 * @return the digital signatures in the order of the messages.
+	 * @throws NoSuchAlgorithmException
+	 * @throws NoSuchProviderException
+	 * @throws InvalidKeyException
+	 * @throws SignatureException
+	 */
+	public List<SignatureEntity> signBatch(List<byte[]> data, PrivateKey key)
+			throws NoSuchAlgorithmException, NoSuchProviderException,
+			InvalidKeyException, SignatureException {
+		return signBatch(data, key, Workers.executor);
+	}
+
+	/**
+	 * Generates digital signatures for a batch of messages using the same
+	 * private key on the given executor.
+	 * 
+	 * @param data
+	 *            the messages to sign.
+	 * @param key
+	 *            the private key.
+	 * @param executor
+	 *            the executor signing the parts of the batch.
+	 * @return the digital signatures in the order of the messages.
+	 * @throws NoSuchAlgorithmException
+	 * @throws NoSuchProviderException
+	 * @throws InvalidKeyException
+	 * @throws SignatureException
+	 */
+	public List<SignatureEntity> signBatch(final List<byte[]> data,
+			final PrivateKey key, ExecutorService executor)
+			throws NoSuchAlgorithmException, NoSuchProviderException,
+			InvalidKeyException, SignatureException {
+		final SignatureEntity[] signs = new SignatureEntity[data.size()];
+		List<Callable<Void>> parts = new ArrayList<>();
+
+		for (final int[] range : split(data.size())) {
+			parts.add(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					signRange(data, range[0], range[1], key, signs);
+					return null;
+				}
+			});
+		}
+
+		invoke(parts, executor);
+
+		return Arrays.asList(signs);
+	}
+
+	/**
+	 * Verifies a batch of digital signatures on the corresponding messages
+	 * using the same public key. Like {@link #signBatch(List, PrivateKey)},
+	 * the batch is verified concurrently. ECDSA signatures with SHA-2 digests
+	 * are checked with a {@link PreparedECKey}, all others with one Signature
+	 * object per worker which is initialized with the key only once.
+	 * 
+	 * @param signs
+	 *            the digital signatures to verify.
+	 * @param data
+	 *            the messages, in the same order as the signatures.
+	 * @param key
+	 *            the public key.
+	 * @return the ascending indices of all signatures which are not valid.
+	 * @throws NoSuchAlgorithmException
+	 * @throws NoSuchProviderException
+	 * @throws InvalidKeyException
+	 * @throws SignatureException
+	 */
+	public List<Integer> verifyBatch(List<SignatureEntity> signs,
+			List<byte[]> data, PublicKey key) throws NoSuchAlgorithmException,
+			NoSuchProviderException, InvalidKeyException, SignatureException {
+		return verifyBatch(signs, data, key, Workers.executor);
+	}
+
+	/**
+	 * Verifies a batch of digital signatures on the corresponding messages
+	 * using the same public key on the given executor.
+	 * 
+	 * @param signs
+	 *            the digital signatures to verify.
+	 * @param data
+	 *            the messages, in the same order as the signatures.
+	 * @param key
+	 *            the public key.
+	 * @param executor
+	 *            the executor verifying the parts of the batch.
+	 * @return the ascending indices of all signatures which are not valid.
+	 * @throws NoSuchAlgorithmException
+	 * @throws NoSuchProviderException
+	 * @throws InvalidKeyException
+	 * @throws SignatureException
+	 */
+	public List<Integer> verifyBatch(final List<SignatureEntity> signs,
+			final List<byte[]> data, final PublicKey key,
+			ExecutorService executor) throws NoSuchAlgorithmException,
+			NoSuchProviderException, InvalidKeyException, SignatureException {
+		if (signs.size() != data.size())
+			throw new IllegalArgumentException("Got " + signs.size()
+					+ " signatures for " + data.size() + " messages.");
+
+		final boolean[] failed = new boolean[data.size()];
+		List<Callable<Void>> parts = new ArrayList<>();
+
+		for (final int[] range : split(data.size())) {
+			parts.add(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					verifyRange(signs, data, range[0], range[1], key, failed);
+					return null;
+				}
+			});
+		}
+
+		invoke(parts, executor);
 
-		return dsa.verify(sign.get());
+		List<Integer> indices = new ArrayList<>();
+		for (int i = 0; i < failed.length; i++)
+			if (failed[i])
+				indices.add(i);
+
+		return indices;
+	}
+
+	/**
+	 * Returns the 'NONEwith*' primitive of the signature algorithm used to
+	 * sign tree hashes.
+	 */
+	private static String getPrimitive(String algorithm)
+			throws NoSuchAlgorithmException {
+		switch (algorithm) {
+		case "SHA256withDSA":
+			return "NONEwithDSA";
+		case "SHA256withECDSA":
+			return "NONEwithECDSA";
+		case "SHA256withRSA":
+			return "NONEwithRSA";
+
+		default:
+			throw new NoSuchAlgorithmException("No tree hash mode for '"
+					+ algorithm + "'.");
+		}
+	}
+
+	private SignatureEntity signRoot(String provider, String primitive,
+			byte[] root, PrivateKey key) throws NoSuchAlgorithmException,
+			NoSuchProviderException, InvalidKeyException, SignatureException {
+		Signature dsa = pool.getForSign(primitive, provider, key);
+		boolean done = false;
+
+		try {
+			updateRoot(dsa, primitive, root);
+			SignatureEntity sign = SignatureEntity.wrap(dsa.sign());
+			done = true;
+
+			return sign;
+		} finally {
+			if (!done)
+				pool.discard(primitive, provider, true);
+		}
+	}
+
+	private boolean verifyRoot(SignatureEntity sign, String provider,
+			String primitive, byte[] root, PublicKey key)
+			throws NoSuchAlgorithmException, NoSuchProviderException,
+			InvalidKeyException, SignatureException {
+		Signature dsa = pool.getForVerify(primitive, provider, key);
+		boolean done = false;
+
+		try {
+			updateRoot(dsa, primitive, root);
+			boolean verifies = sign.verify(dsa);
+			done = true;
+
+			return verifies;
+		} finally {
+			if (!done)
+				pool.discard(primitive, provider, false);
+		}
+	}
+
+	private static void updateRoot(Signature dsa, String primitive,
+			byte[] root) throws SignatureException {
+		// Raw RSA signs the DigestInfo, DSA and ECDSA sign the digest itself.
+		if (primitive.equals("NONEwithRSA"))
+			dsa.update(SHA256_DIGEST_INFO);
+		dsa.update(root);
+	}
+
+	private SignatureEntity sign(Input input, PrivateKey key)
+			throws IOException, NoSuchAlgorithmException,
+			NoSuchProviderException, InvalidKeyException, SignatureException {
+		SignatureSpec spec = holder.getSpec();
+		String algorithm = spec.getAlgorithmForSign();
+		String provider = spec.getProvider();
+		Signature dsa = pool.getForSign(algorithm, provider, key);
+		boolean done = false;
+
+		try {
+			input.update(dsa);
+			SignatureEntity sign = SignatureEntity.wrap(dsa.sign());
+			done = true;
+
+			return sign;
+		} finally {
+			// Also discards the partially updated object if reading failed.
+			if (!done)
+				pool.discard(algorithm, provider, true);
+		}
+	}
+
+	private boolean verify(SignatureEntity sign, Input input, PublicKey key)
+			throws IOException, NoSuchAlgorithmException,
+			NoSuchProviderException, InvalidKeyException, SignatureException {
+		SignatureSpec spec = holder.getSpec();
+		String algorithm = spec.getAlgorithmForSign();
+		String provider = spec.getProvider();
+		Signature dsa = pool.getForVerify(algorithm, provider, key);
+		boolean done = false;
+
+		try {
+			input.update(dsa);
+			boolean verifies = sign.verify(dsa);
+			done = true;
+
+			return verifies;
+		} finally {
+			if (!done)
+				pool.discard(algorithm, provider, false);
+		}
+	}
+
+	private static void updateFrom(Signature dsa, InputStream in)
+			throws IOException, SignatureException {
+		byte[] chunk = new byte[CHUNK_SIZE];
+
+		for (int n; (n = in.read(chunk)) >= 0;)
+			dsa.update(chunk, 0, n);
+	}
+
+	private static void updateFrom(Signature dsa, ReadableByteChannel in)
+			throws IOException, SignatureException {
+		byte[] chunk = new byte[CHUNK_SIZE];
+		ByteBuffer buf = ByteBuffer.wrap(chunk);
+
+		while (in.read(buf) >= 0) {
+			dsa.update(chunk, 0, buf.position());
+			buf.clear();
+		}
+	}
+
+	private static void updateFrom(Signature dsa, Path file)
+			throws IOException, SignatureException {
+		byte[] chunk = new byte[CHUNK_SIZE];
+
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.READ)) {
+			long size = channel.size();
+
+			for (long position = 0; position < size; position += MAP_WINDOW) {
+				MappedByteBuffer window = channel.map(MapMode.READ_ONLY,
+						position, Math.min(MAP_WINDOW, size - position));
+
+				// Copy from the mapping, Signature.update(ByteBuffer) would
+				// allocate a temporary array on every call for it.
+				while (window.hasRemaining()) {
+					int n = Math.min(chunk.length, window.remaining());
+					window.get(chunk, 0, n);
+					dsa.update(chunk, 0, n);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Input supplied to a Signature object in chunks.
+	 */
+	private interface Input {
+		void update(Signature dsa) throws IOException, SignatureException;
+	}
+
+	private void signRange(List<byte[]> data, int from, int to,
+			PrivateKey key, SignatureEntity[] signs)
+			throws NoSuchAlgorithmException, NoSuchProviderException,
+			InvalidKeyException, SignatureException {
+		SignatureSpec spec = holder.getSpec();
+		String algorithm = spec.getAlgorithmForSign();
+		String provider = spec.getProvider();
+		// The same Signature object signs the whole range.
+		Signature dsa = pool.getForSign(algorithm, provider, key);
+		boolean done = false;
+
+		try {
+			for (int i = from; i < to; i++) {
+				dsa.update(data.get(i));
+				signs[i] = SignatureEntity.wrap(dsa.sign());
+			}
+			done = true;
+		} finally {
+			if (!done)
+				pool.discard(algorithm, provider, true);
+		}
+	}
+
+	private void verifyRange(List<SignatureEntity> signs, List<byte[]> data,
+			int from, int to, PublicKey key, boolean[] failed)
+			throws NoSuchAlgorithmException, NoSuchProviderException,
+			InvalidKeyException {
+		SignatureSpec spec = holder.getSpec();
+		String algorithm = spec.getAlgorithmForSign();
+		String provider = spec.getProvider();
+
+		String digest = getECDSADigest(algorithm);
+		if (digest != null && key instanceof ECPublicKey) {
+			verifyRange(signs, data, from, to, PreparedECKey.get(key),
+					MessageDigest.getInstance(digest, provider), failed);
+			return;
+		}
+
+		Signature dsa = pool.getForVerify(algorithm, provider, key);
+
+		for (int i = from; i < to; i++) {
+			try {
+				dsa.update(data.get(i));
+				failed[i] = !signs.get(i).verify(dsa);
+			} catch (SignatureException e) {
+				// Malformed signature, continue with a fresh Signature object.
+				failed[i] = true;
+				pool.discard(algorithm, provider, false);
+				dsa = pool.getForVerify(algorithm, provider, key);
+			}
+		}
+	}
+
+	/**
+	 * Returns the digest of an ECDSA signature algorithm supported by
+	 * {@link PreparedECKey}, or null for any other algorithm.
+	 */
+	private static String getECDSADigest(String algorithm) {
+		switch (algorithm) {
+		case "SHA256withECDSA":
+			return "SHA-256";
+		case "SHA384withECDSA":
+			return "SHA-384";
+		case "SHA512withECDSA":
+			return "SHA-512";
+
+		default:
+			return null;
+		}
+	}
+
+	private static void verifyRange(List<SignatureEntity> signs,
+			List<byte[]> data, int from, int to, PreparedECKey key,
+			MessageDigest md, boolean[] failed) {
+		for (int i = from; i < to; i++)
+			failed[i] = !signs.get(i).verify(key, md.digest(data.get(i)));
+	}
+
+	/**
+	 * Splits a batch into contiguous index ranges, at most one per worker.
+	 */
+	private static List<int[]> split(int size) {
+		int parts = Math.max(1, Math.min(Workers.THREADS, size
+				/ MIN_BATCH_PER_WORKER));
+		List<int[]> ranges = new ArrayList<>(parts);
+
+		for (int i = 0; i < parts; i++)
+			ranges.add(new int[] { (int) ((long) size * i / parts),
+					(int) ((long) size * (i + 1) / parts) });
+
+		return ranges;
+	}
+
+	private static void invoke(List<Callable<Void>> parts,
+			ExecutorService executor) throws NoSuchAlgorithmException,
+			NoSuchProviderException, InvalidKeyException, SignatureException {
+		List<Future<Void>> results;
+
+		try {
+			if (parts.size() == 1) {
+				// Not worth handing over to another thread.
+				parts.get(0).call();
+				return;
+			}
+
+			results = executor.invokeAll(parts);
+			for (Future<Void> result : results)
+				result.get();
+		} catch (ExecutionException e) {
+			rethrow(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SignatureException("Batch processing interrupted.", e);
+		} catch (Exception e) {
+			rethrow(e);
+		}
+	}
+
+	private static void rethrow(Throwable t) throws NoSuchAlgorithmException,
+			NoSuchProviderException, InvalidKeyException, SignatureException {
+		if (t instanceof NoSuchAlgorithmException)
+			throw (NoSuchAlgorithmException) t;
+		if (t instanceof NoSuchProviderException)
+			throw (NoSuchProviderException) t;
+		if (t instanceof InvalidKeyException)
+			throw (InvalidKeyException) t;
+		if (t instanceof SignatureException)
+			throw (SignatureException) t;
+		if (t instanceof RuntimeException)
+			throw (RuntimeException) t;
+		if (t instanceof Error)
+			throw (Error) t;
+
+		throw new SignatureException(t);
+	}
+
+	/**
+	 * Returns the maximum size of a signature created with a key of the
+	 * algorithm and key size as used by the {@code KeyPairFactory}. DSA
+	 * signatures are bounded with the subprime of
+	 * {@link DSAParameterStore#getSubprimeLength(int)}, i.e. 160 bits for 1024
+	 * bit keys, 224 bits for 2048 bit keys and 256 bits for 3072 bit keys, EC
+	 * signatures with the curve chosen
+	 * for the key size (or a curve of the key size itself if it is below
+	 * 1024). EdDSA signatures have a fixed size.
+	 * 
+	 * @param algorithmForKeys
+	 *            the key algorithm, i.e. 'DSA', 'EC', 'RSA', 'RSASSA-PSS',
+	 *            'Ed25519' or 'Ed448'.
+	 * @param keySize
+	 *            the key size.
+	 * @param raw
+	 *            true for the size of DSA and EC signatures in the raw 'r ||
+	 *            s' encoding, false for the DER encoding.
+	 * @return the maximum signature size in bytes.
+	 */
+	public static int getMaxSignatureSize(String algorithmForKeys,
+			int keySize, boolean raw) {
+		if (algorithmForKeys.equals("RSA")
+				|| algorithmForKeys.equals("RSASSA-PSS"))
+			return (keySize + 7) / 8;
+		if (algorithmForKeys.equals("Ed25519"))
+			return 64;
+		if (algorithmForKeys.equals("Ed448"))
+			return 114;
+
+		int length;
+		if (algorithmForKeys.equals("DSA"))
+			length = DSAParameterStore.getSubprimeLength(keySize) / 8;
+		else if (algorithmForKeys.equals("EC"))
+			length = (getCurveSize(keySize) + 7) / 8;
+		else
+			throw new IllegalArgumentException("Unknown key algorithm '"
+					+ algorithmForKeys + "'.");
+
+		if (raw)
+			return 2 * length;
+
+		// SEQUENCE of two INTEGERs, each with a possible leading zero byte.
+		int content = 2 * (2 + length + 1);
+		return (content < 0x80 ? 2 : 3) + content;
+	}
+
+	private static int getCurveSize(int keySize) {
+		switch (keySize) {
+		case 1024:
+			return 192;
+		case 2048:
+			return 224;
+		case 3072:
+			return 256;
+
+		default:
+			return keySize;
+		}
 	}
 
 	/**
@@ -113,4 +1081,21 @@ public class SignatureHandler {
 
 		return Arrays.copyOf(arr, arr.length);
 	}
+
+	/**
+	 * Lazily created pool of daemon worker threads for batch processing.
+	 */
+	private static class Workers {
+		private static final int THREADS = Runtime.getRuntime()
+				.availableProcessors();
+		private static final ExecutorService executor = Executors
+				.newFixedThreadPool(THREADS, new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "signature-batch-worker");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+	}
 }
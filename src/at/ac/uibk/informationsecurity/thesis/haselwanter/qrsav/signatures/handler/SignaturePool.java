@@ -0,0 +1,188 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.handler;
+
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class caches initialized {@link Signature} objects so that signing or
+ * verifying many messages does not look up the provider and create a new
+ * Signature object each time. Since Signature objects are not thread-safe,
+ * every thread keeps its own Signature object per algorithm, provider and
+ * operation. A cached object is only initialized again if it is requested with
+ * a different key.
+ *
+ * @author Stefan Haselwanter
+ *
+ */
+public class SignaturePool {
+	private final ThreadLocal<Map<String, Entry>> engines = new ThreadLocal<Map<String, Entry>>() {
+		@Override
+		protected Map<String, Entry> initialValue() {
+			return new HashMap<>();
+		}
+	};
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong initializations = new AtomicLong();
+
+	/**
+	 * Returns a Signature object of the current thread initialized for signing
+	 * with the private key.
+	 *
+	 * @param algorithm
+	 *            the signature algorithm.
+	 * @param provider
+	 *            the provider.
+	 * @param key
+	 *            the private key.
+	 * @return the Signature object ready for signing.
+	 * @throws NoSuchAlgorithmException
+	 * @throws NoSuchProviderException
+	 * @throws InvalidKeyException
+	 */
+	public Signature getForSign(String algorithm, String provider,
+			PrivateKey key) throws NoSuchAlgorithmException,
+			NoSuchProviderException, InvalidKeyException {
+		Entry entry = getEntry(algorithm, provider, true);
+
+		if (!entry.isInitializedWith(key)) {
+			entry.key = null;
+			entry.engine.initSign(key);
+			entry.key = key;
+			initializations.incrementAndGet();
+		}
+
+		return entry.engine;
+	}
+
+	/**
+	 * Returns a Signature object of the current thread initialized for
+	 * verification with the public key.
+	 *
+	 * @param algorithm
+	 *            the signature algorithm.
+	 * @param provider
+	 *            the provider.
+	 * @param key
+	 *            the public key.
+	 * @return the Signature object ready for verification.
+	 * @throws NoSuchAlgorithmException
+	 * @throws NoSuchProviderException
+	 * @throws InvalidKeyException
+	 */
+	public Signature getForVerify(String algorithm, String provider,
+			PublicKey key) throws NoSuchAlgorithmException,
+			NoSuchProviderException, InvalidKeyException {
+		Entry entry = getEntry(algorithm, provider, false);
+
+		if (!entry.isInitializedWith(key)) {
+			entry.key = null;
+			entry.engine.initVerify(key);
+			entry.key = key;
+			initializations.incrementAndGet();
+		}
+
+		return entry.engine;
+	}
+
+	/**
+	 * Removes the Signature object of the current thread, e.g. if an operation
+	 * failed and left it in an undefined state.
+	 *
+	 * @param algorithm
+	 *            the signature algorithm.
+	 * @param provider
+	 *            the provider.
+	 * @param forSign
+	 *            true for the Signature object used for signing, false for
+	 *            the one used for verification.
+	 */
+	public void discard(String algorithm, String provider, boolean forSign) {
+		engines.get().remove(getName(algorithm, provider, forSign));
+	}
+
+	/**
+	 * Returns the number of requests served by a cached Signature object.
+	 *
+	 * @return the number of hits.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of requests which had to create a new Signature
+	 * object.
+	 *
+	 * @return the number of misses.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns the number of times a Signature object was initialized with a
+	 * key.
+	 *
+	 * @return the number of key initializations.
+	 */
+	public long getInitializations() {
+		return initializations.get();
+	}
+
+	public void resetStatistics() {
+		hits.set(0);
+		misses.set(0);
+		initializations.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return "Signature pool: " + getHits() + " hits, " + getMisses()
+				+ " misses, " + getInitializations() + " key initializations";
+	}
+
+	private Entry getEntry(String algorithm, String provider, boolean forSign)
+			throws NoSuchAlgorithmException, NoSuchProviderException {
+		Map<String, Entry> map = engines.get();
+		String name = getName(algorithm, provider, forSign);
+		Entry entry = map.get(name);
+
+		if (entry != null) {
+			hits.incrementAndGet();
+			return entry;
+		}
+
+		misses.incrementAndGet();
+		entry = new Entry(Signature.getInstance(algorithm, provider));
+		map.put(name, entry);
+
+		return entry;
+	}
+
+	private static String getName(String algorithm, String provider,
+			boolean forSign) {
+		return (forSign ? "sign:" : "verify:") + algorithm + "/" + provider;
+	}
+
+	private static class Entry {
+		private final Signature engine;
+		private Key key;
+
+		private Entry(Signature engine) {
+			this.engine = engine;
+		}
+
+		private boolean isInitializedWith(Key other) {
+			return key != null && (key == other || key.equals(other));
+		}
+	}
+}
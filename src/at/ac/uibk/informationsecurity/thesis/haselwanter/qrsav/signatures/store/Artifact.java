@@ -0,0 +1,59 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.store;
+
+/**
+ * This class describes an artifact of the {@link ArtifactStore}: the SHA-256
+ * hash of its content, the file extension and the size in bytes. Artifacts
+ * with the same content share the same file.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+public final class Artifact {
+	private final ArtifactKey key;
+	private final String hash;
+	private final String extension;
+	private final long size;
+
+	Artifact(ArtifactKey key, String hash, String extension, long size) {
+		this.key = key;
+		this.hash = hash;
+		this.extension = extension;
+		this.size = size;
+	}
+
+	public ArtifactKey getKey() {
+		return key;
+	}
+
+	/**
+	 * Returns the SHA-256 hash of the content as hexadecimal string.
+	 * 
+	 * @return the hash.
+	 */
+	public String getHash() {
+		return hash;
+	}
+
+	public String getExtension() {
+		return extension;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the path of the artifact relative to the object directory of
+	 * the store, i.e. 'ab/abcdef....extension'.
+	 * 
+	 * @return the relative path.
+	 */
+	public String getFileName() {
+		return hash.substring(0, 2) + "/" + hash + "." + extension;
+	}
+
+	@Override
+	public String toString() {
+		return hash + "\t" + extension + "\t" + size + "\t" + key;
+	}
+}
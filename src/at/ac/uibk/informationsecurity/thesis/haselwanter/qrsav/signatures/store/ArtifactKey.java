@@ -0,0 +1,109 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.store;
+
+/**
+ * This class identifies an artifact of the {@link ArtifactStore} by what it
+ * was created from: the kind of artifact, the input file, the signature
+ * algorithm, the key size and the error correction level of QR codes. Keys are
+ * immutable and can be used from many threads.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+public final class ArtifactKey {
+	// Placeholder for artifacts without an error correction level.
+	public static final String NONE = "-";
+	private final String kind;
+	private final String input;
+	private final String algorithm;
+	private final int keySize;
+	private final String ecLevel;
+
+	/**
+	 * Creates a new artifact key. The fields must not contain tabs or line
+	 * breaks, since they are stored as a line of the index file.
+	 * 
+	 * @param kind
+	 *            the kind of artifact, e.g. 'sign' or 'code-tags'.
+	 * @param input
+	 *            the name of the input file.
+	 * @param algorithm
+	 *            the signature algorithm.
+	 * @param keySize
+	 *            the key size.
+	 * @param ecLevel
+	 *            the error correction level, or null if not applicable.
+	 */
+	public ArtifactKey(String kind, String input, String algorithm,
+			int keySize, String ecLevel) {
+		this.kind = check(kind);
+		this.input = check(input);
+		this.algorithm = check(algorithm);
+		this.keySize = keySize;
+		this.ecLevel = ecLevel == null ? NONE : check(ecLevel);
+	}
+
+	public String getKind() {
+		return kind;
+	}
+
+	public String getInput() {
+		return input;
+	}
+
+	public String getAlgorithm() {
+		return algorithm;
+	}
+
+	public int getKeySize() {
+		return keySize;
+	}
+
+	public String getECLevel() {
+		return ecLevel;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + kind.hashCode();
+		result = prime * result + input.hashCode();
+		result = prime * result + algorithm.hashCode();
+		result = prime * result + keySize;
+		result = prime * result + ecLevel.hashCode();
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		ArtifactKey other = (ArtifactKey) obj;
+		return keySize == other.keySize && kind.equals(other.kind)
+				&& input.equals(other.input)
+				&& algorithm.equals(other.algorithm)
+				&& ecLevel.equals(other.ecLevel);
+	}
+
+	/**
+	 * Returns the fields separated by tabs as stored in the index file.
+	 */
+	@Override
+	public String toString() {
+		return kind + "\t" + input + "\t" + algorithm + "\t" + keySize + "\t"
+				+ ecLevel;
+	}
+
+	private static String check(String field) {
+		if (field == null || field.isEmpty() || field.indexOf('\t') >= 0
+				|| field.indexOf('\n') >= 0 || field.indexOf('\r') >= 0)
+			throw new IllegalArgumentException("Invalid artifact key field '"
+					+ field + "'.");
+
+		return field;
+	}
+}
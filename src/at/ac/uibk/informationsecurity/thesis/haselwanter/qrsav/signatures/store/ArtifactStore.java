@@ -0,0 +1,394 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.Digests;
+
+/**
+ * This class stores keys, signatures and QR codes content-addressed by the
+ * SHA-256 hash of their content in 'objects/ab/abcdef....extension' below the
+ * store directory. The index file maps each {@link ArtifactKey} to the latest
+ * {@link Artifact} stored for it, so runs with other inputs, algorithms, key
+ * sizes or error correction levels never overwrite each other and lookups do
+ * not scan any directory.
+ * <p>
+ * Objects are written to a temporary file and moved to their final name
+ * atomically, so concurrent readers never see partial files. The index is an
+ * append-only log of tab-separated lines, later lines replacing earlier lines
+ * of the same key. Appends are serialized by a lock file, so several threads
+ * and processes can share a store, but each process opens a store only once.
+ * Entries appended by other processes become visible when the store is opened
+ * again.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+public class ArtifactStore implements Closeable {
+	public static final String INDEX_FILE = "index";
+	public static final String OBJECT_DIR = "objects";
+	private static final String LOCK_FILE = "index.lock";
+	// Index lines per live entry above which the index is rewritten on open.
+	private static final int COMPACT_RATIO = 2;
+	private final Path dir;
+	private final Path objects;
+	private final Path index;
+	private final FileChannel lock;
+	private final Map<ArtifactKey, Artifact> entries = new ConcurrentHashMap<>();
+
+	private ArtifactStore(Path dir) throws IOException {
+		this.dir = dir;
+		this.objects = dir.resolve(OBJECT_DIR);
+		this.index = dir.resolve(INDEX_FILE);
+
+		Files.createDirectories(objects);
+		lock = FileChannel.open(dir.resolve(LOCK_FILE),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+	}
+
+	/**
+	 * Opens the store in the directory, creating it if necessary, and loads
+	 * the index. Indexes mostly consisting of replaced entries are compacted.
+	 * 
+	 * @param dir
+	 *            the store directory.
+	 * @return the store.
+	 * @throws IOException
+	 */
+	public static ArtifactStore open(Path dir) throws IOException {
+		ArtifactStore store = new ArtifactStore(dir);
+
+		try {
+			store.load();
+		} catch (IOException e) {
+			store.close();
+			throw e;
+		}
+
+		return store;
+	}
+
+	/**
+	 * Returns the artifact stored for the key.
+	 * 
+	 * @param key
+	 *            the artifact key.
+	 * @return the artifact, or null if there is none.
+	 */
+	public Artifact get(ArtifactKey key) {
+		return entries.get(key);
+	}
+
+	/**
+	 * Checks whether an artifact is stored for the key and its file exists.
+	 * 
+	 * @param key
+	 *            the artifact key.
+	 * @return true, if the artifact exists, false otherwise.
+	 */
+	public boolean contains(ArtifactKey key) {
+		Artifact artifact = entries.get(key);
+
+		return artifact != null && Files.isRegularFile(resolve(artifact));
+	}
+
+	/**
+	 * Returns the path of the artifact's file.
+	 * 
+	 * @param artifact
+	 *            the artifact.
+	 * @return the path.
+	 */
+	public Path resolve(Artifact artifact) {
+		return objects.resolve(artifact.getFileName());
+	}
+
+	/**
+	 * Returns the content of the artifact stored for the key.
+	 * 
+	 * @param key
+	 *            the artifact key.
+	 * @return the content, or null if there is no artifact for the key.
+	 * @throws IOException
+	 */
+	public byte[] read(ArtifactKey key) throws IOException {
+		Artifact artifact = entries.get(key);
+
+		return artifact == null ? null : Files.readAllBytes(resolve(artifact));
+	}
+
+	/**
+	 * Stores the data as artifact for the key.
+	 * 
+	 * @param key
+	 *            the artifact key.
+	 * @param data
+	 *            the content.
+	 * @param extension
+	 *            the file extension without the leading dot.
+	 * @return the stored artifact.
+	 * @throws IOException
+	 */
+	public Artifact put(ArtifactKey key, byte[] data, String extension)
+			throws IOException {
+		try (Output output = newOutput(key, extension)) {
+			ByteBuffer buf = ByteBuffer.wrap(data);
+			while (buf.hasRemaining())
+				output.write(buf);
+
+			return output.commit();
+		}
+	}
+
+	/**
+	 * Returns a channel to write the content of an artifact to, e.g. a QR code
+	 * written by a code writer. The artifact is stored when
+	 * {@link Output#commit()} is called and discarded if the channel is closed
+	 * before.
+	 * 
+	 * @param key
+	 *            the artifact key.
+	 * @param extension
+	 *            the file extension without the leading dot.
+	 * @return the channel.
+	 * @throws IOException
+	 */
+	public Output newOutput(ArtifactKey key, String extension)
+			throws IOException {
+		if (extension.isEmpty() || extension.indexOf('/') >= 0
+				|| extension.indexOf('\t') >= 0)
+			throw new IllegalArgumentException("Invalid extension '"
+					+ extension + "'.");
+
+		return new Output(key, extension);
+	}
+
+	/**
+	 * Returns the number of keys in the index.
+	 * 
+	 * @return the number of entries.
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Rewrites the index with only the latest entry of each key, including
+	 * the entries appended by other processes in the meantime.
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void compact() throws IOException {
+		FileLock l = lock.lock();
+		try {
+			readIndex();
+			writeIndex();
+		} finally {
+			l.release();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		lock.close();
+	}
+
+	@Override
+	public String toString() {
+		return "Artifact store '" + dir + "': " + entries.size() + " entries";
+	}
+
+	private synchronized void load() throws IOException {
+		int lines;
+
+		FileLock l = lock.lock();
+		try {
+			lines = readIndex();
+
+			if (lines > COMPACT_RATIO * entries.size() + 64)
+				writeIndex();
+		} finally {
+			l.release();
+		}
+	}
+
+	private int readIndex() throws IOException {
+		List<String> lines;
+
+		try {
+			lines = Files.readAllLines(index, StandardCharsets.UTF_8);
+		} catch (NoSuchFileException e) {
+			return 0;
+		}
+
+		for (String line : lines) {
+			String[] fields = line.split("\t", -1);
+
+			// Skip lines torn by a crash during an append.
+			if (fields.length != 8 || fields[0].length() != 64)
+				continue;
+
+			try {
+				ArtifactKey key = new ArtifactKey(fields[3], fields[4],
+						fields[5], Integer.parseInt(fields[6]), fields[7]);
+				entries.put(key, new Artifact(key, fields[0], fields[1],
+						Long.parseLong(fields[2])));
+			} catch (IllegalArgumentException e) {
+				continue;
+			}
+		}
+
+		return lines.size();
+	}
+
+	private void writeIndex() throws IOException {
+		List<String> lines = new ArrayList<>(entries.size());
+		for (Artifact artifact : entries.values())
+			lines.add(artifact.toString());
+
+		Path tmp = Files.createTempFile(dir, INDEX_FILE, ".tmp");
+		try {
+			Files.write(tmp, lines, StandardCharsets.UTF_8);
+			move(tmp, index);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private synchronized void append(Artifact artifact) throws IOException {
+		ByteBuffer line = ByteBuffer.wrap((artifact + "\n")
+				.getBytes(StandardCharsets.UTF_8));
+
+		// Only one process appends at a time and lines are never torn.
+		FileLock l = lock.lock();
+		try (FileChannel channel = FileChannel.open(index,
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND)) {
+			while (line.hasRemaining())
+				channel.write(line);
+		} finally {
+			l.release();
+		}
+
+		entries.put(artifact.getKey(), artifact);
+	}
+
+	private static void move(Path source, Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * A channel writing the content of a new artifact to a temporary file
+	 * while hashing it.
+	 */
+	public class Output implements WritableByteChannel {
+		private final ArtifactKey key;
+		private final String extension;
+		private final Path tmp;
+		private final FileChannel channel;
+		private final MessageDigest digest;
+		private long size = 0;
+		private boolean committed = false;
+
+		private Output(ArtifactKey key, String extension) throws IOException {
+			this.key = key;
+			this.extension = extension;
+
+			digest = Digests.newSha256();
+
+			tmp = Files.createTempFile(objects, "artifact", ".tmp");
+			channel = FileChannel.open(tmp, StandardOpenOption.WRITE);
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			ByteBuffer written = src.duplicate();
+			int n = channel.write(src);
+
+			written.limit(written.position() + n);
+			digest.update(written);
+			size += n;
+
+			return n;
+		}
+
+		/**
+		 * Moves the written content to its content-addressed file and adds
+		 * the artifact to the index.
+		 * 
+		 * @return the stored artifact.
+		 * @throws IOException
+		 */
+		public Artifact commit() throws IOException {
+			if (committed)
+				throw new IllegalStateException("Artifact already committed.");
+
+			channel.close();
+			committed = true;
+
+			Artifact artifact = new Artifact(key, Digests.toHex(digest.digest()),
+					extension, size);
+			Path target = resolve(artifact);
+
+			try {
+				Files.createDirectories(target.getParent());
+
+				if (Files.exists(target))
+					// Same content stored before.
+					Files.delete(tmp);
+				else
+					move(tmp, target);
+			} catch (FileAlreadyExistsException e) {
+				// Stored concurrently with the same content.
+				Files.deleteIfExists(tmp);
+			} catch (IOException e) {
+				Files.deleteIfExists(tmp);
+				throw e;
+			}
+
+			append(artifact);
+
+			return artifact;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return channel.isOpen();
+		}
+
+		/**
+		 * Closes the channel and discards the content if the artifact was not
+		 * committed.
+		 */
+		@Override
+		public void close() throws IOException {
+			if (committed)
+				return;
+
+			committed = true;
+			channel.close();
+			Files.deleteIfExists(tmp);
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.security.AlgorithmParameterGenerator;
+import java.security.AlgorithmParameters;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.SecureRandom;
+import java.security.spec.DSAGenParameterSpec;
+import java.security.spec.DSAParameterSpec;
+import java.security.spec.InvalidParameterSpecException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.generators.DSAParametersGenerator;
+import org.bouncycastle.crypto.params.DSAParameterGenerationParameters;
+import org.bouncycastle.crypto.params.DSAParameters;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.handler.FileHandler;
+
+/**
+ * This class provides the DSA domain parameters (prime P, subprime Q and base
+ * G) for a specific key length. The parameters are generated once according to
+ * FIPS 186 by the provider's parameter generator and stored in the key
+ * directory as 'dsa-[length].params'. Later runs load them from there, so
+ * generating a key pair only has to choose the private exponent. Stored
+ * parameters with a subprime other than {@link #getSubprimeLength(int)} are
+ * replaced, and the {@code AnalysisTest} replaces stored key pairs built on
+ * them as well.
+ *
+ * @author Stefan Haselwanter
+ *
+ */
+public class DSAParameterStore {
+	private static final ConcurrentMap<Integer, DSAParameterSpec> params = new ConcurrentHashMap<>();
+
+	private DSAParameterStore() {
+
+	}
+
+	/**
+	 * Returns the DSA domain parameters for the key length, loading or
+	 * generating them on first use.
+	 *
+	 * @param length
+	 *            the key length, i.e. the bit length of the prime P.
+	 * @param holder
+	 *            the signature specification holder instance whose provider
+	 *            generates the parameters.
+	 * @return the DSA domain parameters.
+	 * @throws NoSuchAlgorithmException
+	 * @throws NoSuchProviderException
+	 * @throws InvalidAlgorithmParameterException
+	 *             thrown if the parameters cannot be generated or the stored
+	 *             parameters cannot be read.
+	 */
+	public static DSAParameterSpec get(int length, SignatureSpecHolder holder)
+			throws NoSuchAlgorithmException, NoSuchProviderException,
+			InvalidAlgorithmParameterException {
+		DSAParameterSpec spec = params.get(length);
+
+		if (spec != null)
+			return spec;
+
+		// Generating parameters takes seconds, so do it only once.
+		synchronized (DSAParameterStore.class) {
+			spec = params.get(length);
+
+			if (spec == null) {
+				spec = loadOrGenerate(length, holder);
+				params.put(length, spec);
+			}
+		}
+
+		return spec;
+	}
+
+	/**
+	 * Returns the bit length of the subprime Q of the parameters for the key
+	 * length, i.e. 160 bits for keys up to 1024 bits, 224 bits for 2048 bit
+	 * keys and 256 bits otherwise.
+	 *
+	 * @param length
+	 *            the key length, i.e. the bit length of the prime P.
+	 * @return the bit length of the subprime Q.
+	 */
+	public static int getSubprimeLength(int length) {
+		if (length <= 1024)
+			return 160;
+		if (length == 2048)
+			return 224;
+
+		return 256;
+	}
+
+	private static DSAParameterSpec loadOrGenerate(int length,
+			SignatureSpecHolder holder) throws NoSuchAlgorithmException,
+			NoSuchProviderException, InvalidAlgorithmParameterException {
+		FileHandler fh = FileHandler.getInstance("./", holder);
+		String file = FileHandler.keyDir + "dsa-" + length + ".params";
+
+		try {
+			AlgorithmParameters parameters;
+
+			try {
+				parameters = AlgorithmParameters.getInstance("DSA",
+						holder.getProvider());
+				parameters.init(fh.readFile(file));
+			} catch (FileNotFoundException e) {
+				// No parameters stored yet.
+				parameters = null;
+			}
+
+			// Earlier runs may have stored parameters with another subprime.
+			if (parameters == null
+					|| parameters.getParameterSpec(DSAParameterSpec.class)
+							.getQ().bitLength() != getSubprimeLength(length)) {
+				parameters = generate(length, holder.getProvider());
+				fh.writeFile(parameters.getEncoded(), file);
+			}
+
+			return parameters.getParameterSpec(DSAParameterSpec.class);
+		} catch (IOException | InvalidParameterSpecException e) {
+			throw new InvalidAlgorithmParameterException(
+					"Reading DSA parameters failed due to '" + e.getMessage()
+							+ "'", e);
+		}
+	}
+
+	private static AlgorithmParameters generate(int length, String provider)
+			throws NoSuchAlgorithmException, NoSuchProviderException,
+			InvalidParameterSpecException {
+		AlgorithmParameterGenerator generator = AlgorithmParameterGenerator
+				.getInstance("DSA", provider);
+		SecureRandom random = new SecureRandom();
+		int subprimeLength = getSubprimeLength(length);
+
+		try {
+			generator.init(new DSAGenParameterSpec(length, subprimeLength),
+					random);
+		} catch (InvalidAlgorithmParameterException e) {
+			// Bouncy Castle only takes the key length and would choose a 256
+			// bit subprime for every length above 1024 bits.
+			DSAParametersGenerator fips = new DSAParametersGenerator(
+					new SHA256Digest());
+			fips.init(new DSAParameterGenerationParameters(length,
+					subprimeLength, 80, random));
+			DSAParameters p = fips.generateParameters();
+
+			AlgorithmParameters parameters = AlgorithmParameters.getInstance(
+					"DSA", provider);
+			parameters.init(new DSAParameterSpec(p.getP(), p.getQ(), p.getG()));
+			return parameters;
+		}
+
+		return generator.generateParameters();
+	}
+}
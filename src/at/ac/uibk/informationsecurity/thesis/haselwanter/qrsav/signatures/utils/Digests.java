@@ -0,0 +1,53 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * This class provides the SHA-256 digests which identify artifacts, analysis
+ * cells and the nodes of a {@link TreeHash}, and formats their hashes as
+ * lowercase hexadecimal strings.
+ *
+ * @author Stefan Haselwanter
+ *
+ */
+public class Digests {
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private Digests() {
+
+	}
+
+	/**
+	 * Returns a new SHA-256 digest.
+	 *
+	 * @return the digest.
+	 */
+	public static MessageDigest newSha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform supports SHA-256.
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Returns the hash as lowercase hexadecimal string with two digits per
+	 * byte.
+	 *
+	 * @param hash
+	 *            the hash.
+	 * @return the hexadecimal string.
+	 */
+	public static String toHex(byte[] hash) {
+		char[] hex = new char[2 * hash.length];
+
+		for (int i = 0; i < hash.length; i++) {
+			hex[2 * i] = HEX[(hash[i] >> 4) & 0x0F];
+			hex[2 * i + 1] = HEX[hash[i] & 0x0F];
+		}
+
+		return new String(hex);
+	}
+}
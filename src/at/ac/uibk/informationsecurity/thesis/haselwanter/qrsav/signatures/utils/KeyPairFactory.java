@@ -1,26 +1,26 @@
 package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils;
 
-import java.math.BigInteger;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
-import java.security.spec.DSAParameterSpec;
 import java.security.spec.ECGenParameterSpec;
-import java.util.Random;
 
 import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.exceptions.NoSignatureSpecHolderException;
 
 /**
  * This class generates new key pairs out of certain key and signature
- * specifications defined in a {@link SignatureSpecHolder} object.
+ * specifications defined in a {@link SignatureSpecHolder} object. The key pair
+ * generator comes from the {@link SignatureSpecRegistry}, so factories for the
+ * same specifications can be used from many threads.
  * 
  * @author Stefan Haselwanter
  *
  */
 public class KeyPairFactory {
-	private static KeyPairGenerator keyGen;
+	private final SignatureSpecHolder holder;
+	private final SignatureSpecRegistry.Handles handles;
 
 	/**
 	 * Returns a new KeyPairFactory object that generates public/private key
@@ -39,8 +39,8 @@ public class KeyPairFactory {
 		if (holder == null)
 			throw new NoSignatureSpecHolderException();
 
-		keyGen = KeyPairGenerator.getInstance(holder.getAlgorithmForKeys(),
-				holder.getProvider());
+		this.holder = holder;
+		handles = SignatureSpecRegistry.get(holder.getSpec());
 	}
 
 	/**
@@ -57,7 +57,11 @@ public class KeyPairFactory {
 	}
 
 	/**
-	 * Generates a KeyPair of specific key length.
+	 * Generates a KeyPair of specific key length. EC keys of the legacy
+	 * lengths 1024, 2048 and 3072 use the curves P-192, P-224 and P-256, of
+	 * the lengths 384 and 521 the curves P-384 and P-521, unless the
+	 * specifications name a curve. Ed25519 and Ed448 keys have a fixed length,
+	 * the given one only labels them.
 	 * 
 	 * @param length
 	 *            the key length.
@@ -68,45 +72,44 @@ public class KeyPairFactory {
 	 */
 	public KeyPair generate(int length) throws NoSuchAlgorithmException,
 			NoSuchProviderException, InvalidAlgorithmParameterException {
+		KeyPairGenerator keyGen = handles.getKeyPairGenerator();
+		String parameters = holder.getSpec().getParameters();
+
 		// Initialize KeyPairGenerator with key length.
 		if (keyGen.getAlgorithm().equals("DSA")
 				&& (length == 2048 || length == 3072)) {
-			Random random = new Random();
-
-			/*
-			 * DSA requires three parameters to create a key pair: prime (P),
-			 * subprime (Q), and base (G)
-			 */
-			BigInteger prime = new BigInteger(length, random);
-			int numBits = (length == 2048 ? 224 : 256);
-
-			BigInteger base = new BigInteger(numBits, random);
-			BigInteger subPrime;
-			do {
-				subPrime = new BigInteger(numBits, random);
-			} while (!(prime.gcd(subPrime).equals(BigInteger.ONE)));
-
-			DSAParameterSpec spec = new DSAParameterSpec(prime, subPrime, base);
-			keyGen.initialize(spec);
+			// Domain parameters are generated once per key length.
+			keyGen.initialize(DSAParameterStore.get(length, holder));
 		} else if (keyGen.getAlgorithm().equals("DSA")
-				|| keyGen.getAlgorithm().equals("RSA")) {
+				|| keyGen.getAlgorithm().equals("RSA")
+				|| keyGen.getAlgorithm().equals("RSASSA-PSS")) {
 			keyGen.initialize(length);
 		} else if (keyGen.getAlgorithm().equals("EC")) {
 			ECGenParameterSpec spec = null;
 
-			switch (length) {
-			case 1024:
-				spec = new ECGenParameterSpec("P-192");
-				break;
-			case 2048:
-				spec = new ECGenParameterSpec("P-224");
-				break;
-			case 3072:
-				spec = new ECGenParameterSpec("P-256");
-				break;
+			if (parameters != null)
+				spec = new ECGenParameterSpec(parameters);
+			else {
+				switch (length) {
+				case 1024:
+					spec = new ECGenParameterSpec("P-192");
+					break;
+				case 2048:
+					spec = new ECGenParameterSpec("P-224");
+					break;
+				case 3072:
+					spec = new ECGenParameterSpec("P-256");
+					break;
+				case 384:
+					spec = new ECGenParameterSpec("P-384");
+					break;
+				case 521:
+					spec = new ECGenParameterSpec("P-521");
+					break;
 
-			default:
-				break;
+				default:
+					break;
+				}
 			}
 
 			keyGen.initialize(spec);
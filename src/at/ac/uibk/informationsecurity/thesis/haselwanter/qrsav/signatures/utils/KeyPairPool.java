@@ -0,0 +1,227 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.exceptions.NoSignatureSpecHolderException;
+
+/**
+ * This class keeps a number of pre-generated key pairs for one key algorithm,
+ * provider and key length. A background thread generates new key pairs with a
+ * {@link KeyPairFactory} whenever the pool holds less than its target number
+ * of key pairs. Use {@link #getInstance(SignatureSpecHolder, int)} to get the
+ * shared pool for the current specifications of a holder.
+ *
+ * @author Stefan Haselwanter
+ *
+ */
+public class KeyPairPool {
+	private static final ConcurrentMap<String, KeyPairPool> pools = new ConcurrentHashMap<>();
+	private static volatile int defaultTarget = 4;
+	private final String name;
+	private final int target;
+	private final KeyPairFactory factory;
+	private final int length;
+	private final BlockingQueue<KeyPair> pairs;
+	private final AtomicLong generated = new AtomicLong();
+	private final AtomicLong generationNanos = new AtomicLong();
+	private final AtomicLong taken = new AtomicLong();
+	private final AtomicLong waits = new AtomicLong();
+	private volatile String failure;
+
+	/**
+	 * Returns the shared pool for the holder's key algorithm and provider and
+	 * the key length. The pool is created and started on first use with the
+	 * default target size.
+	 *
+	 * @param holder
+	 *            the signature specification holder instance.
+	 * @param length
+	 *            the key length.
+	 * @return the key pair pool.
+	 * @throws GeneralSecurityException
+	 *             thrown if no key pairs can be generated for the
+	 *             specifications.
+	 * @throws NoSignatureSpecHolderException
+	 */
+	public static KeyPairPool getInstance(SignatureSpecHolder holder,
+			int length) throws GeneralSecurityException,
+			NoSignatureSpecHolderException {
+		if (holder == null)
+			throw new NoSignatureSpecHolderException();
+
+		String name = holder.getSpec().getKeyName() + "/" + holder.getProvider()
+				+ "/" + length;
+		KeyPairPool pool = pools.get(name);
+
+		if (pool == null) {
+			KeyPairPool created = new KeyPairPool(holder, length, defaultTarget);
+			pool = pools.putIfAbsent(name, created);
+
+			if (pool == null) {
+				pool = created;
+				pool.start();
+			}
+		}
+
+		return pool;
+	}
+
+	/**
+	 * Returns all shared pools created so far, e.g. to report their metrics.
+	 *
+	 * @return the shared pools.
+	 */
+	public static Collection<KeyPairPool> getPools() {
+		return Collections.unmodifiableCollection(pools.values());
+	}
+
+	/**
+	 * Sets the number of key pairs that pools created from now on keep ready.
+	 *
+	 * @param target
+	 *            the target number of key pairs per pool.
+	 */
+	public static void setDefaultTarget(int target) {
+		if (target < 1)
+			throw new IllegalArgumentException("Target must be positive.");
+
+		defaultTarget = target;
+	}
+
+	/**
+	 * Creates a new pool which is not started yet.
+	 *
+	 * @param holder
+	 *            the signature specification holder instance.
+	 * @param length
+	 *            the key length.
+	 * @param target
+	 *            the number of key pairs to keep ready.
+	 * @throws GeneralSecurityException
+	 * @throws NoSignatureSpecHolderException
+	 */
+	public KeyPairPool(SignatureSpecHolder holder, int length, int target)
+			throws GeneralSecurityException, NoSignatureSpecHolderException {
+		this.factory = new KeyPairFactory(holder);
+		this.name = holder.getSpec().getKeyName().toLowerCase() + "-" + length;
+		this.length = length;
+		this.target = target;
+		this.pairs = new LinkedBlockingQueue<>(target);
+	}
+
+	/**
+	 * Starts the background thread filling this pool.
+	 */
+	public void start() {
+		Thread t = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				fill();
+			}
+		}, "key-pair-pool-" + name);
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/**
+	 * Returns a pre-generated key pair. Blocks until one is available if the
+	 * pool is empty.
+	 *
+	 * @return the key pair.
+	 * @throws InterruptedException
+	 * @throws GeneralSecurityException
+	 *             thrown if the background thread failed to generate key
+	 *             pairs.
+	 */
+	public KeyPair take() throws InterruptedException,
+			GeneralSecurityException {
+		KeyPair pair = pairs.poll();
+
+		if (pair == null) {
+			waits.incrementAndGet();
+			while ((pair = pairs.poll(100, TimeUnit.MILLISECONDS)) == null)
+				if (failure != null)
+					throw new GeneralSecurityException(failure);
+		}
+
+		taken.incrementAndGet();
+		return pair;
+	}
+
+	/**
+	 * Returns the number of key pairs ready to be taken.
+	 *
+	 * @return the fill level.
+	 */
+	public int size() {
+		return pairs.size();
+	}
+
+	public int getTarget() {
+		return target;
+	}
+
+	public long getGenerated() {
+		return generated.get();
+	}
+
+	public long getTaken() {
+		return taken.get();
+	}
+
+	/**
+	 * Returns the number of calls to {@link #take()} which found the pool
+	 * empty and had to wait.
+	 *
+	 * @return the number of waits.
+	 */
+	public long getWaits() {
+		return waits.get();
+	}
+
+	/**
+	 * Returns the generation rate of the background thread.
+	 *
+	 * @return the generated key pairs per second of generation time.
+	 */
+	public double getGenerationRate() {
+		long nanos = generationNanos.get();
+
+		return nanos == 0 ? 0 : generated.get() * 1e9 / nanos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"Key pair pool %s: %d/%d ready, %d generated (%.2f/s), "
+						+ "%d taken, %d waits", name, size(), target,
+				getGenerated(), getGenerationRate(), getTaken(), getWaits());
+	}
+
+	private void fill() {
+		try {
+			while (true) {
+				long start = System.nanoTime();
+				KeyPair pair = factory.generate(length);
+				generationNanos.addAndGet(System.nanoTime() - start);
+				generated.incrementAndGet();
+
+				// Blocks while the pool is full.
+				pairs.put(pair);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (GeneralSecurityException | RuntimeException e) {
+			failure = "Key pair pool '" + name + "': " + e.getMessage();
+		}
+	}
+}
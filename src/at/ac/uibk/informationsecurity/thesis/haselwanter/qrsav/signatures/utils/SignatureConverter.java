@@ -0,0 +1,200 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.Key;
+import java.security.SignatureException;
+import java.security.interfaces.DSAKey;
+import java.security.interfaces.ECKey;
+import java.util.Arrays;
+
+/**
+ * This class converts DSA and ECDSA signatures between their DER encoding
+ * 'SEQUENCE { INTEGER r, INTEGER s }' as produced by the Signature class and
+ * the compact raw encoding 'r || s', where both integers are unsigned,
+ * big-endian and padded to the byte length of the subprime or curve order.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+public class SignatureConverter {
+	private SignatureConverter() {
+
+	}
+
+	/**
+	 * Returns the byte length of each integer of a raw signature created with
+	 * the key.
+	 * 
+	 * @param key
+	 *            the private or public DSA or EC key.
+	 * @return the byte length of r and s, or -1 if the key does not produce
+	 *         signatures consisting of two integers.
+	 */
+	public static int getComponentLength(Key key) {
+		if (key instanceof DSAKey && ((DSAKey) key).getParams() != null)
+			return (((DSAKey) key).getParams().getQ().bitLength() + 7) / 8;
+		else if (key instanceof ECKey)
+			return (((ECKey) key).getParams().getOrder().bitLength() + 7) / 8;
+
+		return -1;
+	}
+
+	/**
+	 * Converts a DER encoded signature to the raw encoding.
+	 * 
+	 * @param der
+	 *            the DER encoded signature.
+	 * @param length
+	 *            the byte length of each integer.
+	 * @return the raw signature of 2 * length bytes.
+	 * @throws SignatureException
+	 *             thrown if the signature is not a valid DER sequence of two
+	 *             integers which fit into the length.
+	 */
+	public static byte[] toRaw(byte[] der, int length)
+			throws SignatureException {
+		byte[] raw = new byte[2 * length];
+		toRaw(ByteBuffer.wrap(der), length, ByteBuffer.wrap(raw));
+
+		return raw;
+	}
+
+	/**
+	 * Converts the DER encoded signature between position and limit of a
+	 * buffer to the raw encoding and puts it into a caller-provided buffer.
+	 * The position of the source buffer is not changed, the position of the
+	 * destination buffer is advanced by 2 * length.
+	 * 
+	 * @param der
+	 *            the buffer containing the DER encoded signature.
+	 * @param length
+	 *            the byte length of each integer.
+	 * @param raw
+	 *            the buffer to put the raw signature into.
+	 * @throws SignatureException
+	 *             thrown if the signature is not a valid DER sequence of two
+	 *             integers which fit into the length.
+	 */
+	public static void toRaw(ByteBuffer der, int length, ByteBuffer raw)
+			throws SignatureException {
+		ByteBuffer buf = der.duplicate();
+
+		if (buf.remaining() < 2 || buf.get() != 0x30)
+			throw new SignatureException("Invalid DER signature.");
+		if (readLength(buf) != buf.remaining())
+			throw new SignatureException("Invalid DER signature length.");
+		if (raw.remaining() < 2 * length)
+			throw new SignatureException("Raw signature does not fit.");
+
+		readInteger(buf, raw, length);
+		readInteger(buf, raw, length);
+	}
+
+	/**
+	 * Converts a raw signature to the DER encoding.
+	 * 
+	 * @param raw
+	 *            the raw signature consisting of two integers of equal
+	 *            length.
+	 * @return the DER encoded signature.
+	 * @throws SignatureException
+	 *             thrown if the signature has an odd length.
+	 */
+	public static byte[] toDER(byte[] raw) throws SignatureException {
+		return toDER(raw, 0, raw.length);
+	}
+
+	/**
+	 * Converts a raw signature stored in part of an array to the DER
+	 * encoding.
+	 * 
+	 * @param raw
+	 *            the array containing the raw signature.
+	 * @param offset
+	 *            the offset of the raw signature.
+	 * @param size
+	 *            the length of the raw signature.
+	 * @return the DER encoded signature.
+	 * @throws SignatureException
+	 *             thrown if the signature has an odd length.
+	 */
+	public static byte[] toDER(byte[] raw, int offset, int size)
+			throws SignatureException {
+		if (size == 0 || size % 2 != 0)
+			throw new SignatureException("Invalid raw signature length.");
+
+		int length = size / 2;
+		byte[] r = new BigInteger(1, Arrays.copyOfRange(raw, offset, offset
+				+ length)).toByteArray();
+		byte[] s = new BigInteger(1, Arrays.copyOfRange(raw, offset + length,
+				offset + size)).toByteArray();
+		int content = 2 + r.length + 2 + s.length;
+		int header = content < 0x80 ? 2 : 3;
+		byte[] der = new byte[header + content];
+		int pos = 0;
+
+		der[pos++] = 0x30;
+		if (header == 3)
+			der[pos++] = (byte) 0x81;
+		der[pos++] = (byte) content;
+		der[pos++] = 0x02;
+		der[pos++] = (byte) r.length;
+		System.arraycopy(r, 0, der, pos, r.length);
+		pos += r.length;
+		der[pos++] = 0x02;
+		der[pos++] = (byte) s.length;
+		System.arraycopy(s, 0, der, pos, s.length);
+
+		return der;
+	}
+
+	private static int readLength(ByteBuffer der) throws SignatureException {
+		if (!der.hasRemaining())
+			throw new SignatureException("Truncated DER signature.");
+
+		int length = der.get() & 0xFF;
+		if (length < 0x80)
+			return length;
+
+		// Long form, signatures never need more than two length bytes.
+		int bytes = length & 0x7F;
+		if (bytes > 2 || bytes > der.remaining())
+			throw new SignatureException("Invalid DER length.");
+
+		length = 0;
+		for (int i = 0; i < bytes; i++)
+			length = (length << 8) | (der.get() & 0xFF);
+
+		return length;
+	}
+
+	private static void readInteger(ByteBuffer der, ByteBuffer raw, int length)
+			throws SignatureException {
+		if (!der.hasRemaining() || der.get() != 0x02)
+			throw new SignatureException("Invalid DER integer.");
+
+		int size = readLength(der);
+		if (size > der.remaining())
+			throw new SignatureException("Truncated DER integer.");
+
+		// Skip leading zero bytes, e.g. the sign byte.
+		while (size > 0 && der.get(der.position()) == 0) {
+			der.get();
+			size--;
+		}
+
+		if (size > length)
+			throw new SignatureException("DER integer exceeds " + length
+					+ " bytes.");
+
+		// Left-pad with zeros, the buffer may be reused.
+		for (int i = size; i < length; i++)
+			raw.put((byte) 0);
+
+		ByteBuffer integer = der.slice();
+		integer.limit(size);
+		raw.put(integer);
+		der.position(der.position() + size);
+	}
+}
@@ -0,0 +1,132 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils;
+
+/**
+ * This class is an immutable set of specifications for the whole
+ * generation/verification procedure of a signature, i.e. the key algorithm,
+ * the signature algorithm, the provider and optionally the parameters of the
+ * keys, e.g. a named curve. Specifications are value objects
+ * and can be shared between threads and used as map keys, e.g. for the
+ * pre-resolved handles of the {@link SignatureSpecRegistry}.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+public final class SignatureSpec {
+	private final String algorithmForKeys;
+	private final String algorithmForSign;
+	private final String provider;
+	private final String parameters;
+
+	/**
+	 * Creates new signature specifications.
+	 * 
+	 * @param algorithmForKeys
+	 *            the key algorithm, e.g. 'EC'.
+	 * @param algorithmForSign
+	 *            the signature algorithm, e.g. 'SHA256withECDSA'.
+	 * @param provider
+	 *            the name of the provider, e.g. 'BC'.
+	 */
+	public SignatureSpec(String algorithmForKeys, String algorithmForSign,
+			String provider) {
+		this(algorithmForKeys, algorithmForSign, provider, null);
+	}
+
+	/**
+	 * Creates new signature specifications with parameters of the keys.
+	 * 
+	 * @param algorithmForKeys
+	 *            the key algorithm, e.g. 'EC'.
+	 * @param algorithmForSign
+	 *            the signature algorithm, e.g. 'SHA256withECDSA'.
+	 * @param provider
+	 *            the name of the provider, e.g. 'BC'.
+	 * @param parameters
+	 *            the name of the parameters, e.g. the curve
+	 *            'brainpoolP256r1', or null to derive them from the key size.
+	 */
+	public SignatureSpec(String algorithmForKeys, String algorithmForSign,
+			String provider, String parameters) {
+		if (algorithmForKeys == null || algorithmForSign == null
+				|| provider == null)
+			throw new IllegalArgumentException(
+					"Algorithms and provider must not be null.");
+
+		this.algorithmForKeys = algorithmForKeys;
+		this.algorithmForSign = algorithmForSign;
+		this.provider = provider;
+		this.parameters = parameters;
+	}
+
+	public String getAlgorithmForKeys() {
+		return algorithmForKeys;
+	}
+
+	public String getAlgorithmForSign() {
+		return algorithmForSign;
+	}
+
+	public String getProvider() {
+		return provider;
+	}
+
+	public String getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * Returns the key algorithm followed by the parameters if any, e.g.
+	 * 'EC-brainpoolP256r1', to name key, signature and code files.
+	 * 
+	 * @return the name of the keys.
+	 */
+	public String getKeyName() {
+		return parameters == null ? algorithmForKeys : algorithmForKeys + "-"
+				+ parameters;
+	}
+
+	/**
+	 * Returns the signature algorithm followed by the parameters if any, e.g.
+	 * 'SHA256withECDSA/brainpoolP256r1', to tell apart the results of
+	 * specifications with the same signature algorithm.
+	 * 
+	 * @return the name of the specifications.
+	 */
+	public String getName() {
+		return parameters == null ? algorithmForSign : algorithmForSign + "/"
+				+ parameters;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + algorithmForKeys.hashCode();
+		result = prime * result + algorithmForSign.hashCode();
+		result = prime * result + provider.hashCode();
+		result = prime * result
+				+ (parameters == null ? 0 : parameters.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		SignatureSpec other = (SignatureSpec) obj;
+		return algorithmForKeys.equals(other.algorithmForKeys)
+				&& algorithmForSign.equals(other.algorithmForSign)
+				&& provider.equals(other.provider)
+				&& (parameters == null ? other.parameters == null : parameters
+						.equals(other.parameters));
+	}
+
+	@Override
+	public String toString() {
+		return getName() + " (" + algorithmForKeys + ", " + provider + ")";
+	}
+}
@@ -1,44 +1,73 @@
 package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils;
 
 /**
- * This class stores the specifications for the whole generation/verification
- * procedure of a signature. There is exactly one {@link SignatureSpecHolder}
- * object for each application which specifications can be set using the
- * {@link #setSpecs(String, String, String)} method.
+ * This class holds the specifications for the whole generation/verification
+ * procedure of a signature as an immutable {@link SignatureSpec}. Holders
+ * created with {@link #of(SignatureSpec)} never change and can be shared
+ * between threads. Components read the specifications once per operation via
+ * {@link #getSpec()}, so they always see a consistent set of algorithms and
+ * provider.
  * 
  * @author Stefan Haselwanter
  *
  */
 public class SignatureSpecHolder {
-	private static final SignatureSpecHolder instance = null;
-	private String algorithmForKeys;
-	private String algorithmForSign;
-	private String provider;
+	private volatile SignatureSpec spec;
 
-	private SignatureSpecHolder(){
-		
+	private SignatureSpecHolder(SignatureSpec spec) {
+		this.spec = spec;
 	}
-	
+
+	/**
+	 * Returns a new holder without specifications, which have to be set using
+	 * {@link #setSpecs(String, String, String)}.
+	 * 
+	 * @return the new holder.
+	 * @deprecated use {@link #of(SignatureSpec)} instead.
+	 */
+	@Deprecated
 	public static SignatureSpecHolder getInstance() {
-		return instance == null ? new SignatureSpecHolder() : instance;
+		return new SignatureSpecHolder(null);
+	}
+
+	/**
+	 * Returns a holder for the specifications.
+	 * 
+	 * @param spec
+	 *            the signature specifications.
+	 * @return the holder.
+	 */
+	public static SignatureSpecHolder of(SignatureSpec spec) {
+		if (spec == null)
+			throw new IllegalArgumentException("Spec must not be null.");
+
+		return new SignatureSpecHolder(spec);
 	}
 
+	/**
+	 * Replaces the specifications of this holder at once.
+	 * 
+	 * @deprecated use {@link #of(SignatureSpec)} instead.
+	 */
+	@Deprecated
 	public void setSpecs(String algorithmKeys, String algorithmSign,
 			String provider) {
-		this.algorithmForKeys = algorithmKeys;
-		this.algorithmForSign = algorithmSign;
-		this.provider = provider;
+		spec = new SignatureSpec(algorithmKeys, algorithmSign, provider);
+	}
+
+	public SignatureSpec getSpec() {
+		return spec;
 	}
 
 	public String getAlgorithmForKeys() {
-		return algorithmForKeys;
+		return spec.getAlgorithmForKeys();
 	}
 
 	public String getAlgorithmForSign() {
-		return algorithmForSign;
+		return spec.getAlgorithmForSign();
 	}
 
 	public String getProvider() {
-		return provider;
+		return spec.getProvider();
 	}
 }
@@ -0,0 +1,125 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils;
+
+import java.security.KeyFactory;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.Provider;
+import java.security.Security;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * This class keeps the JCA handles of every {@link SignatureSpec} used so far,
+ * so the provider is looked up by name only once per specification. The
+ * handles are safe to use from many threads: the {@link Provider} is shared,
+ * whereas {@link KeyFactory} and {@link KeyPairGenerator} objects are not
+ * thread-safe and therefore created once per thread.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+public final class SignatureSpecRegistry {
+	private static final ConcurrentMap<SignatureSpec, Handles> handles = new ConcurrentHashMap<>();
+
+	private SignatureSpecRegistry() {
+
+	}
+
+	/**
+	 * Returns the handles for the specifications, resolving the provider and
+	 * checking the key algorithm on first use.
+	 * 
+	 * @param spec
+	 *            the signature specifications.
+	 * @return the handles.
+	 * @throws NoSuchAlgorithmException
+	 *             thrown if the provider does not support the key algorithm.
+	 * @throws NoSuchProviderException
+	 *             thrown if the provider is not installed.
+	 */
+	public static Handles get(SignatureSpec spec)
+			throws NoSuchAlgorithmException, NoSuchProviderException {
+		Handles h = handles.get(spec);
+
+		if (h == null) {
+			Handles created = new Handles(spec);
+			h = handles.putIfAbsent(spec, created);
+
+			if (h == null)
+				h = created;
+		}
+
+		return h;
+	}
+
+	/**
+	 * The pre-resolved JCA handles of a {@link SignatureSpec}.
+	 */
+	public static class Handles {
+		private final SignatureSpec spec;
+		private final Provider provider;
+		private final ThreadLocal<KeyFactory> keyFactories = new ThreadLocal<>();
+		private final ThreadLocal<KeyPairGenerator> keyGens = new ThreadLocal<>();
+
+		private Handles(SignatureSpec spec) throws NoSuchAlgorithmException,
+				NoSuchProviderException {
+			this.spec = spec;
+			this.provider = Security.getProvider(spec.getProvider());
+
+			if (provider == null)
+				throw new NoSuchProviderException("Provider '"
+						+ spec.getProvider() + "' not found.");
+
+			// Fail early if the key algorithm is not supported.
+			getKeyFactory();
+		}
+
+		public SignatureSpec getSpec() {
+			return spec;
+		}
+
+		public Provider getProvider() {
+			return provider;
+		}
+
+		/**
+		 * Returns the key factory of the calling thread.
+		 * 
+		 * @return the key factory for the key algorithm.
+		 * @throws NoSuchAlgorithmException
+		 */
+		public KeyFactory getKeyFactory() throws NoSuchAlgorithmException {
+			KeyFactory keyFactory = keyFactories.get();
+
+			if (keyFactory == null) {
+				keyFactory = KeyFactory.getInstance(spec.getAlgorithmForKeys(),
+						provider);
+				keyFactories.set(keyFactory);
+			}
+
+			return keyFactory;
+		}
+
+		/**
+		 * Returns the key pair generator of the calling thread. The generator
+		 * keeps its last initialization, so callers initialize it before
+		 * generating key pairs.
+		 * 
+		 * @return the key pair generator for the key algorithm.
+		 * @throws NoSuchAlgorithmException
+		 */
+		public KeyPairGenerator getKeyPairGenerator()
+				throws NoSuchAlgorithmException {
+			KeyPairGenerator keyGen = keyGens.get();
+
+			if (keyGen == null) {
+				keyGen = KeyPairGenerator.getInstance(
+						spec.getAlgorithmForKeys(), provider);
+				keyGens.set(keyGen);
+			}
+
+			return keyGen;
+		}
+	}
+}
@@ -0,0 +1,232 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * This class computes the SHA-256 tree hash of large inputs on several
+ * threads. The construction is fixed, so signer and verifier always get the
+ * same root:
+ * 
+ * <pre>
+ * leaf i = SHA-256(0x00 || bytes [i * LEAF_SIZE, (i + 1) * LEAF_SIZE) of the input)
+ * node   = SHA-256(0x01 || left || right)
+ * </pre>
+ * 
+ * An empty input consists of a single empty leaf. The nodes of each level are
+ * combined pairwise from the left, the last node of a level with an odd number
+ * of nodes is moved up unchanged. The root is the hash of a single-leaf input
+ * or the only node of the top level. The prefixes keep leaves and nodes apart,
+ * so no input has the same root as another input of a different length.
+ * <p>
+ * Leaves are hashed in contiguous ranges in parallel, combining the levels
+ * takes one hash per {@link #LEAF_SIZE} bytes and runs on the calling thread.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+public final class TreeHash {
+	public static final String DIGEST = "SHA-256";
+	public static final int HASH_SIZE = 32;
+	public static final int LEAF_SIZE = 1 << 20;
+	private static final byte LEAF_PREFIX = 0x00;
+	private static final byte NODE_PREFIX = 0x01;
+	// Ranges per thread, so threads finishing early take over more work.
+	private static final int RANGES_PER_THREAD = 4;
+	// Maximum number of bytes of a file mapped by one range.
+	private static final long MAP_WINDOW = 1L << 28;
+
+	private TreeHash() {
+
+	}
+
+	/**
+	 * Returns the tree hash of the remaining bytes of the buffer. The position
+	 * of the buffer is not changed.
+	 * 
+	 * @param data
+	 *            the input.
+	 * @param executor
+	 *            the executor hashing the leaves.
+	 * @param threads
+	 *            the number of threads of the executor.
+	 * @return the root hash.
+	 * @throws InterruptedException
+	 */
+	public static byte[] hash(final ByteBuffer data, ExecutorService executor,
+			int threads) throws InterruptedException {
+		final int offset = data.position();
+		final long size = data.remaining();
+
+		try {
+			return hash(size, new Leaves() {
+				@Override
+				public void hash(int from, int to, byte[][] leaves) {
+					ByteBuffer buf = data.duplicate();
+					MessageDigest digest = Digests.newSha256();
+
+					for (int i = from; i < to; i++) {
+						buf.limit((int) (offset + Math.min(size,
+								(long) (i + 1) * LEAF_SIZE)));
+						buf.position(offset + i * LEAF_SIZE);
+						leaves[i] = hashLeaf(digest, buf);
+					}
+				}
+			}, executor, threads, RANGES_PER_THREAD * threads);
+		} catch (IOException e) {
+			// Buffers are not read from files.
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Returns the tree hash of a file. Every range of leaves maps its part of
+	 * the file, so files of any size can be hashed.
+	 * 
+	 * @param file
+	 *            the input file.
+	 * @param executor
+	 *            the executor hashing the leaves.
+	 * @param threads
+	 *            the number of threads of the executor.
+	 * @return the root hash.
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static byte[] hash(Path file, ExecutorService executor, int threads)
+			throws IOException, InterruptedException {
+		try (final FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.READ)) {
+			final long size = channel.size();
+			int ranges = (int) Math.max(RANGES_PER_THREAD * threads,
+					(size + MAP_WINDOW - 1) / MAP_WINDOW);
+
+			return hash(size, new Leaves() {
+				@Override
+				public void hash(int from, int to, byte[][] leaves)
+						throws IOException {
+					long start = (long) from * LEAF_SIZE;
+					long end = Math.min(size, (long) to * LEAF_SIZE);
+					ByteBuffer buf = channel.map(MapMode.READ_ONLY, start, end
+							- start);
+					MessageDigest digest = Digests.newSha256();
+
+					for (int i = from; i < to; i++) {
+						buf.limit((int) (Math.min(end, (long) (i + 1)
+								* LEAF_SIZE) - start));
+						buf.position((int) ((long) i * LEAF_SIZE - start));
+						leaves[i] = hashLeaf(digest, buf);
+					}
+				}
+			}, executor, threads, ranges);
+		}
+	}
+
+	/**
+	 * Combines the hashes of the leaves to the root hash.
+	 * 
+	 * @param leaves
+	 *            the hashes of the leaves in the order of the input.
+	 * @return the root hash.
+	 */
+	public static byte[] getRoot(byte[][] leaves) {
+		MessageDigest digest = Digests.newSha256();
+		byte[][] level = leaves;
+
+		while (level.length > 1) {
+			byte[][] next = new byte[(level.length + 1) / 2][];
+
+			for (int i = 0; i + 1 < level.length; i += 2) {
+				digest.update(NODE_PREFIX);
+				digest.update(level[i]);
+				digest.update(level[i + 1]);
+				next[i / 2] = digest.digest();
+			}
+
+			if (level.length % 2 == 1)
+				next[next.length - 1] = level[level.length - 1];
+
+			level = next;
+		}
+
+		return level[0];
+	}
+
+	private static byte[] hash(long size, final Leaves source,
+			ExecutorService executor, int threads, int ranges)
+			throws IOException, InterruptedException {
+		final int count = (int) Math.max(1, (size + LEAF_SIZE - 1) / LEAF_SIZE);
+		final byte[][] leaves = new byte[count][];
+		ranges = Math.max(1, Math.min(count, ranges));
+
+		List<Callable<Void>> parts = new ArrayList<>(ranges);
+		for (int i = 0; i < ranges; i++) {
+			final int from = (int) ((long) count * i / ranges);
+			final int to = (int) ((long) count * (i + 1) / ranges);
+
+			parts.add(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					source.hash(from, to, leaves);
+					return null;
+				}
+			});
+		}
+
+		if (ranges == 1 || threads <= 1) {
+			// Not worth handing over to other threads.
+			for (Callable<Void> part : parts)
+				try {
+					part.call();
+				} catch (IOException | RuntimeException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new IOException(e);
+				}
+
+			return getRoot(leaves);
+		}
+
+		try {
+			for (Future<Void> result : executor.invokeAll(parts))
+				result.get();
+		} catch (ExecutionException e) {
+			Throwable t = e.getCause();
+			if (t instanceof IOException)
+				throw (IOException) t;
+			if (t instanceof RuntimeException)
+				throw (RuntimeException) t;
+			if (t instanceof Error)
+				throw (Error) t;
+
+			throw new IOException(t);
+		}
+
+		return getRoot(leaves);
+	}
+
+	private static byte[] hashLeaf(MessageDigest digest, ByteBuffer leaf) {
+		digest.update(LEAF_PREFIX);
+		digest.update(leaf);
+
+		return digest.digest();
+	}
+
+	/**
+	 * Hashes a range of leaves of the input.
+	 */
+	private interface Leaves {
+		void hash(int from, int to, byte[][] leaves) throws IOException;
+	}
+}
@@ -0,0 +1,27 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.verification;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+
+/**
+ * A key resolver returns the public key to verify a scanned payload with.
+ * Implementations are called by a single thread of the
+ * {@link VerificationPipeline} and should cache decoded keys.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+public interface KeyResolver {
+	/**
+	 * Returns the public key of the payload's signer.
+	 * 
+	 * @param payload
+	 *            the payload, already split into message and signature.
+	 * @return the public key.
+	 * @throws GeneralSecurityException
+	 * @throws IOException
+	 */
+	PublicKey resolve(ScannedPayload payload) throws GeneralSecurityException,
+			IOException;
+}
@@ -0,0 +1,85 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.verification;
+
+import java.nio.ByteBuffer;
+import java.security.PublicKey;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.PayloadFrame;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.SignatureEntity;
+
+/**
+ * This class represents the raw payload of a scanned QR code on its way
+ * through the {@link VerificationPipeline}. The stages of the pipeline add the
+ * message, the signature and the public key, and the parsed frame if the
+ * payload is a {@link PayloadFrame}.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+public class ScannedPayload {
+	private final String name;
+	private final ByteBuffer raw;
+	PayloadFrame frame;
+	ByteBuffer message;
+	SignatureEntity sign;
+	PublicKey key;
+
+	/**
+	 * Creates a scanned payload.
+	 * 
+	 * @param name
+	 *            the name identifying the payload in the report, e.g. the file
+	 *            name or line number.
+	 * @param raw
+	 *            the raw payload as read from the QR code.
+	 */
+	public ScannedPayload(String name, ByteBuffer raw) {
+		this.name = name;
+		this.raw = raw.asReadOnlyBuffer();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public ByteBuffer getRaw() {
+		return raw.duplicate();
+	}
+
+	/**
+	 * Returns the frame parsed from the payload, which also tells the signing
+	 * mode.
+	 * 
+	 * @return the frame, or null if the payload is in the text format or was
+	 *         not split yet.
+	 */
+	public PayloadFrame getFrame() {
+		return frame;
+	}
+
+	/**
+	 * Returns the message split from the payload.
+	 * 
+	 * @return the message, or null if the payload was not split yet.
+	 */
+	public ByteBuffer getMessage() {
+		return message == null ? null : message.duplicate();
+	}
+
+	/**
+	 * Returns the signature split from the payload.
+	 * 
+	 * @return the signature, or null if the payload was not split yet.
+	 */
+	public SignatureEntity getSignature() {
+		return sign;
+	}
+
+	/**
+	 * Returns the resolved public key.
+	 * 
+	 * @return the public key, or null if the key was not resolved yet.
+	 */
+	public PublicKey getKey() {
+		return key;
+	}
+}
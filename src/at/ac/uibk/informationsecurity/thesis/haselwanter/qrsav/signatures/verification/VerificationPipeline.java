@@ -0,0 +1,480 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.verification;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.security.Security;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.util.encoders.Base64;
+
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.PayloadFrame;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.SignatureEntity;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.exceptions.NoSignatureSpecHolderException;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.handler.FileHandler;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.handler.SignatureHandler;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.KeyPairFactory;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureConverter;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpec;
+import at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.utils.SignatureSpecHolder;
+
+/**
+ * This class verifies streams of scanned QR code payloads. The payloads pass
+ * three stages connected by bounded queues, so a slow stage blocks the stages
+ * before it instead of letting the queues grow:
+ * <ol>
+ * <li>A reader thread reads the raw payloads from a directory (one payload
+ * per file) or a stream (one Base64 encoded payload per line).</li>
+ * <li>A parser thread splits each payload into message and signature, either
+ * as {@link PayloadFrame} or in the text format with the
+ * {@link SignatureEntity} tags, and resolves the public key through the
+ * {@link KeyResolver}.</li>
+ * <li>A pool of worker threads verifies the signatures.</li>
+ * </ol>
+ * Payloads which cannot be read, split, resolved or verified are recorded in
+ * the {@link VerificationReport} together with the reason. A stage failing
+ * unexpectedly is recorded as well and stops all stages.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+public class VerificationPipeline {
+	public static final int DEFAULT_QUEUE_SIZE = 256;
+	// Marks the end of the payloads in a queue.
+	private static final ScannedPayload END = new ScannedPayload("",
+			ByteBuffer.allocate(0));
+
+	private final SignatureHandler sh;
+	private final KeyResolver resolver;
+	private final int workers;
+	private final int queueSize;
+
+	/**
+	 * Creates a pipeline.
+	 * 
+	 * @param holder
+	 *            the signature specification holder instance.
+	 * @param resolver
+	 *            the resolver of the public keys.
+	 * @param workers
+	 *            the number of verifying worker threads.
+	 * @param queueSize
+	 *            the capacity of the queues between the stages.
+	 */
+	public VerificationPipeline(SignatureSpecHolder holder,
+			KeyResolver resolver, int workers, int queueSize) {
+		if (workers < 1 || queueSize < 1)
+			throw new IllegalArgumentException(
+					"Workers and queue size must be positive.");
+
+		this.sh = new SignatureHandler(holder);
+		this.resolver = resolver;
+		this.workers = workers;
+		this.queueSize = queueSize;
+	}
+
+	/**
+	 * Returns a key resolver which verifies all payloads with the same public
+	 * key file, decoded once through the key cache of the
+	 * {@link FileHandler}.
+	 * 
+	 * @param fh
+	 *            the file handler.
+	 * @param keyFileName
+	 *            the name of the key file as used by
+	 *            {@link FileHandler#getPublicKey(String)}.
+	 * @return the key resolver.
+	 */
+	public static KeyResolver forKeyFile(final FileHandler fh,
+			final String keyFileName) {
+		return new KeyResolver() {
+			@Override
+			public PublicKey resolve(ScannedPayload payload)
+					throws GeneralSecurityException, IOException {
+				return fh.getPublicKey(keyFileName);
+			}
+		};
+	}
+
+	/**
+	 * Verifies every file of the directory as one payload.
+	 * 
+	 * @param dir
+	 *            the directory.
+	 * @return the report of the run.
+	 * @throws InterruptedException
+	 */
+	public VerificationReport verifyDirectory(final Path dir)
+			throws InterruptedException {
+		return run(new Source() {
+			@Override
+			public void read(BlockingQueue<ScannedPayload> out,
+					VerificationReport report) throws IOException,
+					InterruptedException {
+				try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+					for (Path file : files) {
+						if (Files.isRegularFile(file))
+							out.put(new ScannedPayload(file.getFileName()
+									.toString(), ByteBuffer.wrap(Files
+									.readAllBytes(file))));
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Verifies the payloads of a stream, one Base64 encoded payload per line.
+	 * Empty lines are skipped, the stream is not closed.
+	 * 
+	 * @param in
+	 *            the stream.
+	 * @return the report of the run.
+	 * @throws InterruptedException
+	 */
+	public VerificationReport verifyStream(final InputStream in)
+			throws InterruptedException {
+		return run(new Source() {
+			@Override
+			public void read(BlockingQueue<ScannedPayload> out,
+					VerificationReport report) throws IOException,
+					InterruptedException {
+				BufferedReader reader = new BufferedReader(
+						new InputStreamReader(in, StandardCharsets.US_ASCII));
+				String line;
+				int number = 0;
+
+				while ((line = reader.readLine()) != null) {
+					number++;
+					if (line.trim().isEmpty())
+						continue;
+
+					try {
+						out.put(new ScannedPayload("line " + number, ByteBuffer
+								.wrap(Base64.decode(line.trim()))));
+					} catch (RuntimeException e) {
+						report.failed("line " + number, "Invalid Base64");
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Signs a message with the key pair in every payload format, i.e. the
+	 * text format and frames with a DER, raw (DSA and EC only) and tree-hash
+	 * signature, and verifies the payloads through a pipeline. All payloads
+	 * are expected to verify.
+	 * 
+	 * @param holder
+	 *            the signature specification holder instance.
+	 * @param keys
+	 *            the key pair.
+	 * @return the report of the run.
+	 * @throws GeneralSecurityException
+	 *             thrown if a payload cannot be signed.
+	 * @throws InterruptedException
+	 */
+	public static VerificationReport roundTrip(SignatureSpecHolder holder,
+			final KeyPair keys) throws GeneralSecurityException,
+			InterruptedException {
+		SignatureHandler sh = new SignatureHandler(holder);
+		byte[] msg = new byte[500];
+		for (int i = 0; i < msg.length; i++)
+			msg[i] = (byte) ('a' + i % 26);
+
+		SignatureEntity sign = sh.sign(msg, keys.getPrivate());
+		SignatureEntity treeSign = sh.signTree(ByteBuffer.wrap(msg),
+				keys.getPrivate());
+		int componentLength = SignatureConverter.getComponentLength(keys
+				.getPublic());
+		List<byte[]> payloads = new ArrayList<>();
+
+		payloads.add(new String(msg, StandardCharsets.ISO_8859_1).concat(
+				sign.toString()).getBytes(StandardCharsets.UTF_8));
+		payloads.add(PayloadFrame.encode(msg, sign, 0));
+		if (componentLength > 0)
+			payloads.add(PayloadFrame.encode(msg, sign, componentLength));
+		payloads.add(PayloadFrame.encode(msg, treeSign, 0, true));
+
+		StringBuilder lines = new StringBuilder();
+		for (byte[] payload : payloads)
+			lines.append(Base64.toBase64String(payload)).append('\n');
+
+		VerificationPipeline pipeline = new VerificationPipeline(holder,
+				new KeyResolver() {
+					@Override
+					public PublicKey resolve(ScannedPayload payload) {
+						return keys.getPublic();
+					}
+				}, 2, 1);
+
+		return pipeline.verifyStream(new ByteArrayInputStream(lines
+				.toString().getBytes(StandardCharsets.US_ASCII)));
+	}
+
+	private VerificationReport run(final Source source)
+			throws InterruptedException {
+		final VerificationReport report = new VerificationReport();
+		final BlockingQueue<ScannedPayload> raw = new ArrayBlockingQueue<>(
+				queueSize);
+		final BlockingQueue<ScannedPayload> parsed = new ArrayBlockingQueue<>(
+				queueSize);
+		final List<Thread> threads = new ArrayList<>();
+
+		threads.add(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					source.read(raw, report);
+				} catch (IOException e) {
+					report.failed("source", "Reading failed due to '"
+							+ e.getMessage() + "'");
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (RuntimeException | Error e) {
+					abort(threads, report, e);
+					throw e;
+				} finally {
+					putQuietly(raw, END);
+				}
+			}
+		}, "verification-reader"));
+
+		threads.add(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					parse(raw, parsed, report);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (RuntimeException | Error e) {
+					abort(threads, report, e);
+					throw e;
+				} finally {
+					for (int i = 0; i < workers; i++)
+						putQuietly(parsed, END);
+				}
+			}
+		}, "verification-parser"));
+
+		for (int i = 0; i < workers; i++) {
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						verify(parsed, report);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} catch (RuntimeException | Error e) {
+						abort(threads, report, e);
+						throw e;
+					}
+				}
+			}, "verification-worker-" + i));
+		}
+
+		for (Thread thread : threads) {
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		try {
+			for (Thread thread : threads)
+				thread.join();
+		} catch (InterruptedException e) {
+			for (Thread thread : threads)
+				thread.interrupt();
+			throw e;
+		}
+
+		report.finish();
+
+		return report;
+	}
+
+	private void parse(BlockingQueue<ScannedPayload> in,
+			BlockingQueue<ScannedPayload> out, VerificationReport report)
+			throws InterruptedException {
+		ScannedPayload payload;
+
+		while ((payload = in.take()) != END) {
+			try {
+				split(payload);
+				payload.key = resolver.resolve(payload);
+			} catch (GeneralSecurityException | IOException e) {
+				report.failed(payload.getName(), e.getMessage());
+				continue;
+			} catch (RuntimeException e) {
+				// E.g. a failing key resolver, keep the other payloads going.
+				report.failed(payload.getName(), e.toString());
+				continue;
+			}
+
+			out.put(payload);
+		}
+	}
+
+	private void split(ScannedPayload payload) throws SignatureException {
+		ByteBuffer raw = payload.getRaw();
+
+		if (PayloadFrame.isFrame(raw)) {
+			payload.frame = PayloadFrame.parse(raw);
+			payload.message = payload.frame.getMessage();
+			payload.sign = payload.frame.getSignatureEntity();
+
+			return;
+		}
+
+		// Text format as encoded by the analysis, the message and signature
+		// bytes mapped to characters one by one.
+		String[] content = sh.getContent(StandardCharsets.UTF_8.decode(raw)
+				.toString());
+		if (content.length != 2)
+			throw new SignatureException("No signature found.");
+
+		payload.message = ByteBuffer.wrap(content[0]
+				.getBytes(StandardCharsets.ISO_8859_1));
+		payload.sign = SignatureEntity.wrap(content[1]
+				.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	private void verify(BlockingQueue<ScannedPayload> in,
+			VerificationReport report) throws InterruptedException {
+		ScannedPayload payload;
+
+		while ((payload = in.take()) != END) {
+			try {
+				boolean verifies;
+
+				// Frames carry the signing mode, e.g. tree hashes.
+				if (payload.frame != null)
+					verifies = sh.verify(payload.frame, payload.key);
+				else
+					verifies = sh.verify(payload.sign, payload.getMessage(),
+							payload.key);
+
+				if (verifies)
+					report.verified();
+				else
+					report.failed(payload.getName(),
+							"Signature does not verify.");
+			} catch (GeneralSecurityException e) {
+				report.failed(payload.getName(), e.getMessage());
+			} catch (RuntimeException e) {
+				report.failed(payload.getName(), e.toString());
+			}
+		}
+	}
+
+	/**
+	 * Records the failure of the current stage and interrupts all stages.
+	 * Otherwise the stage before could block forever on a full queue nobody
+	 * takes from anymore.
+	 */
+	private static void abort(List<Thread> threads, VerificationReport report,
+			Throwable e) {
+		report.failed(Thread.currentThread().getName(), "Stage failed due to '"
+				+ e + "'");
+
+		for (Thread thread : threads)
+			thread.interrupt();
+	}
+
+	private static void putQuietly(BlockingQueue<ScannedPayload> queue,
+			ScannedPayload payload) {
+		try {
+			queue.put(payload);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * The first stage of the pipeline.
+	 */
+	private interface Source {
+		void read(BlockingQueue<ScannedPayload> out, VerificationReport report)
+				throws IOException, InterruptedException;
+	}
+
+	/**
+	 * Verifies the payloads of a directory or standard input.
+	 * 
+	 * @param args
+	 *            the key algorithm, signature algorithm, provider and public
+	 *            key file name (e.g. 'ste-1024'), optionally followed by the
+	 *            directory of the payloads and '--threads n' or '--queue n'.
+	 *            '--round-trip' and a key size instead of the key file run
+	 *            {@link #roundTrip(SignatureSpecHolder, KeyPair)} with a new
+	 *            key pair.
+	 * @throws GeneralSecurityException
+	 * @throws NoSignatureSpecHolderException
+	 */
+	public static void main(String[] args) throws InterruptedException,
+			GeneralSecurityException, NoSignatureSpecHolderException {
+		Security.addProvider(new BouncyCastleProvider());
+
+		if (args.length < 4) {
+			System.err.println("Usage: VerificationPipeline <key algorithm> "
+					+ "<signature algorithm> <provider> <public key file> "
+					+ "[directory] [--threads n] [--queue n]");
+			System.err.println("       VerificationPipeline <key algorithm> "
+					+ "<signature algorithm> <provider> --round-trip "
+					+ "<key size>");
+			return;
+		}
+
+		if (args[3].equals("--round-trip")) {
+			SignatureSpecHolder holder = SignatureSpecHolder
+					.of(new SignatureSpec(args[0], args[1], args[2]));
+			int keySize = args.length > 4 ? Integer.parseInt(args[4]) : 1024;
+			VerificationReport report = roundTrip(holder,
+					new KeyPairFactory(holder).generate(keySize));
+
+			report.print(System.out);
+			return;
+		}
+
+		String dir = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int queueSize = DEFAULT_QUEUE_SIZE;
+
+		for (int i = 4; i < args.length; i++) {
+			if (args[i].equals("--threads") && i + 1 < args.length)
+				threads = Math.max(1, Integer.parseInt(args[++i]));
+			else if (args[i].equals("--queue") && i + 1 < args.length)
+				queueSize = Math.max(1, Integer.parseInt(args[++i]));
+			else
+				dir = args[i];
+		}
+
+		SignatureSpecHolder holder = SignatureSpecHolder.of(new SignatureSpec(
+				args[0], args[1], args[2]));
+		FileHandler fh = FileHandler.getInstance("./", holder);
+
+		VerificationPipeline pipeline = new VerificationPipeline(holder,
+				forKeyFile(fh, args[3]), threads, queueSize);
+		VerificationReport report = dir == null ? pipeline
+				.verifyStream(System.in) : pipeline.verifyDirectory(Paths
+				.get(dir));
+
+		report.print(System.out);
+	}
+}
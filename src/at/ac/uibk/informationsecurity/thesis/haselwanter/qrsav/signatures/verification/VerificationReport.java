@@ -0,0 +1,121 @@
+package at.ac.uibk.informationsecurity.thesis.haselwanter.qrsav.signatures.verification;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class collects the outcome of a run of the
+ * {@link VerificationPipeline}: the number of verified and failed payloads,
+ * the throughput and the reasons of the first
+ * {@link #MAX_RECORDED_FAILURES} failures. All methods are thread-safe.
+ * 
+ * @author Stefan Haselwanter
+ *
+ */
+public class VerificationReport {
+	public static final int MAX_RECORDED_FAILURES = 1000;
+
+	private final AtomicLong verified = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final List<Failure> failures = Collections
+			.synchronizedList(new ArrayList<Failure>());
+	private final long start = System.nanoTime();
+	private volatile long end;
+
+	void verified() {
+		verified.incrementAndGet();
+	}
+
+	void failed(String name, String reason) {
+		if (failed.incrementAndGet() <= MAX_RECORDED_FAILURES)
+			failures.add(new Failure(name, reason));
+	}
+
+	void finish() {
+		end = System.nanoTime();
+	}
+
+	public long getVerified() {
+		return verified.get();
+	}
+
+	public long getFailed() {
+		return failed.get();
+	}
+
+	public long getTotal() {
+		return verified.get() + failed.get();
+	}
+
+	/**
+	 * Returns the recorded failures in the order they occurred.
+	 * 
+	 * @return a copy of the recorded failures.
+	 */
+	public List<Failure> getFailures() {
+		synchronized (failures) {
+			return new ArrayList<Failure>(failures);
+		}
+	}
+
+	/**
+	 * Returns the time from the start of the run until it finished, or until
+	 * now if it is still running.
+	 * 
+	 * @return the elapsed time in nanoseconds.
+	 */
+	public long getElapsedNanos() {
+		return (end == 0 ? System.nanoTime() : end) - start;
+	}
+
+	/**
+	 * Returns the number of payloads processed per second.
+	 * 
+	 * @return the throughput.
+	 */
+	public double getThroughput() {
+		return getTotal() / (getElapsedNanos() / 1e9);
+	}
+
+	public void print(PrintStream out) {
+		out.println(String.format(
+				"%d payloads in %.1f ms (%.1f/s): %d verified, %d failed",
+				getTotal(), getElapsedNanos() / 1e6, getThroughput(),
+				getVerified(), getFailed()));
+
+		for (Failure failure : getFailures())
+			out.println("FAILED " + failure);
+		if (getFailed() > MAX_RECORDED_FAILURES)
+			out.println("... " + (getFailed() - MAX_RECORDED_FAILURES)
+					+ " more failures");
+	}
+
+	/**
+	 * A payload which could not be verified.
+	 */
+	public static class Failure {
+		private final String name;
+		private final String reason;
+
+		private Failure(String name, String reason) {
+			this.name = name;
+			this.reason = reason;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getReason() {
+			return reason;
+		}
+
+		@Override
+		public String toString() {
+			return name + ": " + reason;
+		}
+	}
+}